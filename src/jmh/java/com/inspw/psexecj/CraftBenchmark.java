@@ -0,0 +1,82 @@
+package com.inspw.psexecj;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of crafting the argument array of a command.
+ * Run with the gc profiler to see the allocation per call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CraftBenchmark {
+
+    private static final MethodHandle CRAFT;
+
+    static {
+        try {
+            CRAFT = MethodHandles.privateLookupIn(BinaryExecutableExecutor.class, MethodHandles.lookup())
+                    .findVirtual(BinaryExecutableExecutor.class, "craft",
+                            MethodType.methodType(String[].class, Command.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * The number of computers, arguments and processors of the crafted command.
+     */
+    @Param({"1", "100", "10000"})
+    public int size;
+
+    private BinaryExecutableExecutor executor;
+
+    private Command command;
+
+    private CommandTemplate template;
+
+    @Setup
+    public void setup() {
+        executor = new BinaryExecutableExecutor(new File("C:\\PSTools\\PsExec.exe"));
+
+        Command.CommandBuilder builder = Command.prepare()
+                .cmd("cmd")
+                .username("Administrator")
+                .password("Password")
+                .timeout(30)
+                .runElevated(true)
+                .priority(Command.PRIORITY_HIGH);
+
+        String[] arguments = new String[size];
+        int[] processors = new int[size];
+
+        for (int i = 0; i < size; i++) {
+            builder.computer(String.format("10.%d.%d.%d", (i >> 16) & 255, (i >> 8) & 255, i & 255));
+            arguments[i] = "argument" + i;
+            processors[i] = i + 1;
+        }
+
+        command = builder.arguments(arguments).processors(processors).build();
+        template = executor.compile(command);
+    }
+
+    @Benchmark
+    public String[] craft() throws Throwable {
+        return (String[]) CRAFT.invokeExact(executor, command);
+    }
+
+    @Benchmark
+    public String[] craftTemplateForComputer() {
+        return template.craft("10.22.101.101");
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.inspw.psexecj;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures end-to-end execution against a local stub executable that exits immediately.
+ * Requires a POSIX shell, so it only runs on Linux and macOS.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecuteBenchmark {
+
+    private static final int BATCH_SIZE = 32;
+
+    private File stub;
+
+    private BinaryExecutableExecutor executor;
+
+    private Command command;
+
+    @Setup
+    public void setup() throws IOException {
+        stub = File.createTempFile("psexec-stub", ".sh");
+        Files.write(stub.toPath(), "#!/bin/sh\nexit 0\n".getBytes(StandardCharsets.US_ASCII));
+
+        if (!stub.setExecutable(true)) {
+            throw new IOException("Unable to make stub executable");
+        }
+
+        executor = new BinaryExecutableExecutor(stub, 10000);
+        command = Command.prepare()
+                .cmd("cmd")
+                .computer("10.22.101.101")
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(stub.toPath());
+    }
+
+    @Benchmark
+    public ExecutionResult executeSync() throws IOException {
+        return executor.execute(command);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public Object submitConcurrent() {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[BATCH_SIZE];
+
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            futures[i] = executor.submit(command);
+        }
+
+        return CompletableFuture.allOf(futures).join();
+    }
+
+}
@@ -0,0 +1,216 @@
+package com.inspw.psexecj;
+
+import lombok.*;
+import lombok.experimental.Accessors;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Derives the timeout of each execution from the latencies observed for its computer and its program.
+ * The timeout is a percentile of the recent latencies times a multiplier, bounded by a floor and a ceiling.
+ * The latencies of the computer decide once it has enough samples, and those of the program until then,
+ * so that slow computers running the same program do not hold back the timeout of fast ones.
+ * Without enough samples for either, the timeout configured on the executor applies, or the ceiling if there is none.
+ *
+ * Timed out executions only tell that their latency exceeded the timeout. When the percentile falls among them,
+ * the timeout they were cut short at is kept instead of growing from their wall time.
+ *
+ * Only executions targeting a single computer are sampled, as the wall time of an execution against several
+ * computers says nothing about any one of them; such executions get the configured timeout. A bounded number of
+ * computers and programs is tracked: once full, those sampled least recently are evicted.
+ */
+@Builder(builderMethodName = "prepare")
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@Accessors(fluent = true)
+@Getter
+public class AdaptiveTimeoutPolicy implements TimeoutPolicy {
+
+    /**
+     * The percentile of the recent latencies the timeout is based on, between 0 and 100.
+     */
+    @Builder.Default
+    private final double percentile = 99;
+
+    /**
+     * The factor the percentile latency is multiplied by.
+     */
+    @Builder.Default
+    private final double multiplier = 3;
+
+    /**
+     * The lowest timeout in milliseconds.
+     */
+    @Builder.Default
+    private final long floor = 5_000;
+
+    /**
+     * The highest timeout in milliseconds.
+     */
+    @Builder.Default
+    private final long ceiling = 3_600_000;
+
+    /**
+     * The number of latencies a computer or program needs before its timeout adapts.
+     */
+    @Builder.Default
+    private final int minSamples = 20;
+
+    /**
+     * The number of latencies after which older latencies of a computer or program start to fade out.
+     */
+    @Builder.Default
+    private final int window = 256;
+
+    /**
+     * The maximum number of computers, and separately of programs, whose latencies are tracked.
+     */
+    @Builder.Default
+    private final int capacity = 1024;
+
+    @Getter(AccessLevel.NONE)
+    private final Sketches hosts = new Sketches();
+
+    @Getter(AccessLevel.NONE)
+    private final Sketches cmds = new Sketches();
+
+    @Override
+    public long timeout(Command command, long executeTimeout) {
+        String host = command.singleTarget();
+        long timeout = host == null ? 0 : timeout(hosts.get(host));
+
+        if (timeout == 0 && host != null) {
+            timeout = timeout(cmds.get(command.cmd()));
+        }
+
+        if (timeout == 0) {
+            return executeTimeout > 0 ? executeTimeout : ceiling;
+        }
+
+        return Math.max(floor, Math.min(ceiling, timeout));
+    }
+
+    /**
+     * Derive the timeout from a sketch.
+     *
+     * @param sketch the latencies of a computer or program
+     * @return the timeout in milliseconds, or 0 if the sketch has too few samples
+     */
+    private long timeout(LatencySketch sketch) {
+        if (sketch == null || sketch.count() < minSamples) {
+            return 0;
+        }
+
+        long latency = sketch.percentile(percentile);
+
+        if (latency < 0) {
+            return Math.max(1, sketch.lastCensored());
+        }
+
+        return (long) Math.ceil(latency * multiplier);
+    }
+
+    /**
+     * Record the wall time of executions that exited, and timed out executions as censored latencies.
+     * Executions targeting several computers are not recorded.
+     *
+     * @param command the command that was executed
+     * @param result  the result of the execution
+     */
+    @Override
+    public void record(Command command, ExecutionResult result) {
+        String target = command.singleTarget();
+
+        if (target == null
+                || result.termination() != Termination.EXITED && result.termination() != Termination.TIMED_OUT) {
+            return;
+        }
+
+        long millis = result.wallTime().toMillis();
+        LatencySketch host = hosts.sketch(target, window, capacity);
+        LatencySketch cmd = cmds.sketch(command.cmd(), window, capacity);
+
+        if (result.termination() == Termination.TIMED_OUT) {
+            host.censor(millis);
+            cmd.censor(millis);
+        } else {
+            host.record(millis);
+            cmd.record(millis);
+        }
+    }
+
+    /**
+     * The latency sketches of computers or programs, evicting the least recently sampled ones once full.
+     */
+    private static final class Sketches {
+
+        private final ConcurrentHashMap<String, Tracked> sketches = new ConcurrentHashMap<>();
+
+        private final AtomicBoolean evicting = new AtomicBoolean();
+
+        private LatencySketch get(String key) {
+            Tracked tracked = sketches.get(key);
+            return tracked == null ? null : tracked.sketch;
+        }
+
+        /**
+         * Get the sketch of the given key to sample, creating it if needed.
+         *
+         * @param key      the computer or program
+         * @param window   the window of a new sketch
+         * @param capacity the maximum number of sketches
+         * @return the sketch
+         */
+        private LatencySketch sketch(String key, int window, int capacity) {
+            long now = System.nanoTime();
+            Tracked tracked = sketches.computeIfAbsent(key, k -> new Tracked(new LatencySketch(window)));
+            tracked.lastRecorded = now;
+
+            if (sketches.size() > Math.max(1, capacity)) {
+                evict(now, Math.max(1, capacity));
+            }
+
+            return tracked.sketch;
+        }
+
+        /**
+         * Evict the least recently sampled sketches until the set is a quarter below capacity.
+         * Eviction happens in batches so that a full set does not scan its sketches on every new key.
+         */
+        private void evict(long now, int capacity) {
+            if (!evicting.compareAndSet(false, true)) {
+                return;
+            }
+
+            try {
+                int excess = sketches.size() - capacity * 3 / 4;
+
+                if (excess > 0) {
+                    sketches.entrySet().stream()
+                            .sorted(Comparator.comparingLong(entry -> entry.getValue().lastRecorded - now))
+                            .limit(excess)
+                            .map(Map.Entry::getKey)
+                            .forEach(sketches::remove);
+                }
+            } finally {
+                evicting.set(false);
+            }
+        }
+
+    }
+
+    private static final class Tracked {
+
+        private final LatencySketch sketch;
+
+        private volatile long lastRecorded;
+
+        private Tracked(LatencySketch sketch) {
+            this.sketch = sketch;
+        }
+
+    }
+
+}
@@ -0,0 +1,317 @@
+package com.inspw.psexecj;
+
+import lombok.Getter;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admits executions to another executor under a global limit of running processes and per-host and
+ * per-subnet rate limits. Executions that cannot start yet wait in a bounded queue without holding a thread.
+ * Executions rejected by the queue complete as {@link Termination#REJECTED}.
+ * The buckets of hosts and subnets that have not been contacted for a while are full, and are evicted
+ * as more hosts and subnets are contacted, so that only recently contacted ones are tracked.
+ */
+public class AdmissionControlledExecutor implements AsyncExecutor {
+
+    /**
+     * The executor running the admitted executions.
+     */
+    @Getter
+    private final AsyncExecutor executor;
+
+    /**
+     * The admission limits.
+     */
+    @Getter
+    private final AdmissionPolicy policy;
+
+    private final Semaphore permits;
+
+    private final Queue<Request> queue = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /**
+     * The minimum number of tracked buckets before full buckets are evicted.
+     */
+    static final int MIN_EVICTION_SIZE = 64;
+
+    private final Buckets<String> hostBuckets = new Buckets<>();
+
+    private final Buckets<Long> subnetBuckets = new Buckets<>();
+
+    /**
+     * Create an admission controlled executor.
+     *
+     * @param executor the executor running the admitted executions
+     * @param policy   the admission limits
+     */
+    public AdmissionControlledExecutor(AsyncExecutor executor, AdmissionPolicy policy) {
+        this.executor = executor;
+        this.policy = policy;
+        this.permits = policy.maxConcurrent() > 0 ? new Semaphore(policy.maxConcurrent()) : null;
+    }
+
+    /**
+     * Get the number of hosts and subnets whose rate limits are tracked.
+     *
+     * @return the number of token buckets
+     */
+    int getBucketCount() {
+        return hostBuckets.buckets.size() + subnetBuckets.buckets.size();
+    }
+
+    /**
+     * Get the number of executions waiting to be admitted.
+     *
+     * @return the number of waiting executions
+     */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    /**
+     * Submit the given command for admission. Cancelling the returned future withdraws a waiting
+     * execution, or cancels a running one.
+     *
+     * @param command  the command to execute
+     * @param computer the computer to target, or null to target the computers of the command
+     * @return the future result of the execution
+     */
+    @Override
+    public CompletableFuture<ExecutionResult> submit(Command command, String computer) {
+        Request request = new Request(command, computer);
+
+        if (queued.incrementAndGet() > policy.maxQueued()) {
+            Request oldest = policy.rejectionPolicy() == AdmissionPolicy.RejectionPolicy.REJECT_OLDEST
+                    ? queue.poll()
+                    : null;
+
+            if (oldest == null) {
+                queued.decrementAndGet();
+                request.result.complete(ExecutionResult.rejected("Admission queue is full"));
+                return request.result;
+            }
+
+            queued.decrementAndGet();
+            oldest.result.complete(ExecutionResult.rejected("Rejected in favour of a newer execution"));
+        }
+
+        request.result.whenComplete((r, e) -> {
+            if (request.result.isCancelled() && queue.remove(request)) {
+                queued.decrementAndGet();
+            }
+        });
+        queue.add(request);
+        drain();
+        return request.result;
+    }
+
+    /**
+     * Admit waiting executions while permits are available.
+     */
+    private void drain() {
+        while (!queue.isEmpty() && tryAcquirePermit()) {
+            Request request = queue.poll();
+
+            if (request == null) {
+                releasePermit();
+                continue;
+            }
+
+            queued.decrementAndGet();
+            admit(request);
+        }
+    }
+
+    /**
+     * Start an execution holding a permit once the rate limits allow it.
+     * If a rate limit applies, the permit is given back and the execution retries after the required wait.
+     * Only called from {@link #drain()}, which goes on admitting after a permit was given back.
+     *
+     * @param request the execution holding a permit
+     */
+    private void admit(Request request) {
+        if (request.result.isDone()) {
+            releasePermit();
+            return;
+        }
+
+        long wait = acquire(request);
+
+        if (wait > 0) {
+            releasePermit();
+            queued.incrementAndGet();
+            DeadlineScheduler.shared().schedule(() -> {
+                queue.add(request);
+                drain();
+            }, wait, TimeUnit.NANOSECONDS);
+            return;
+        }
+
+        CompletableFuture<ExecutionResult> execution;
+
+        try {
+            execution = executor.submit(request.command, request.computer);
+        } catch (RuntimeException e) {
+            execution = CompletableFuture.failedFuture(e);
+        }
+
+        CompletableFuture<ExecutionResult> running = execution;
+        request.result.whenComplete((r, e) -> {
+            if (request.result.isCancelled()) {
+                running.cancel(true);
+            }
+        });
+        // Completing asynchronously keeps executions failing right away from recursing through the queue.
+        // The next execution is admitted before the result is handed out, so callers see the permit passed on.
+        running.whenCompleteAsync((r, e) -> {
+            releasePermit();
+            drain();
+
+            if (e != null) {
+                request.result.completeExceptionally(e);
+            } else {
+                request.result.complete(r);
+            }
+        }, CompletionPool.get());
+    }
+
+    /**
+     * Take a token from the buckets of the host and subnet of an execution, or from neither if either of them
+     * makes the execution wait.
+     *
+     * @param request the execution to admit
+     * @return 0 if the tokens were taken, otherwise the time in nanoseconds to wait
+     */
+    private long acquire(Request request) {
+        boolean host = policy.hostRate() > 0;
+        boolean subnet = policy.subnetRate() > 0 && request.subnet >= 0;
+        long wait = host ? hostBuckets.tryAcquire(request.host, policy.hostRate(), policy.hostBurst()) : 0;
+
+        if (wait > 0 || !subnet) {
+            return wait;
+        }
+
+        wait = subnetBuckets.tryAcquire(request.subnet, policy.subnetRate(), policy.subnetBurst());
+
+        if (wait > 0 && host) {
+            hostBuckets.refund(request.host);
+        }
+
+        return wait;
+    }
+
+    private boolean tryAcquirePermit() {
+        return permits == null || permits.tryAcquire();
+    }
+
+    private void releasePermit() {
+        if (permits != null) {
+            permits.release();
+        }
+    }
+
+    /**
+     * An execution waiting for admission.
+     */
+    private class Request {
+
+        private final Command command;
+
+        private final String computer;
+
+        private final String host;
+
+        /**
+         * The subnet of the host, or -1 if the host is not an IPv4 address.
+         */
+        private final long subnet;
+
+        private final CompletableFuture<ExecutionResult> result = new CompletableFuture<>();
+
+        private Request(Command command, String computer) {
+            this.command = command;
+            this.computer = computer;
+
+            this.host = computer != null ? computer : command.targetName();
+
+            long address = Ipv4.parse(host);
+            int prefixLength = Math.max(0, Math.min(32, policy.subnetPrefixLength()));
+            this.subnet = address < 0 ? -1
+                    : prefixLength == 0 ? 0 : address & (0xFFFFFFFFL << (32 - prefixLength)) & 0xFFFFFFFFL;
+        }
+
+    }
+
+    /**
+     * The token buckets of hosts or subnets. Full buckets are evicted in batches once the number of buckets
+     * doubled since the last eviction, as a full bucket is no different from a new one.
+     *
+     * @param <K> the type of the keys
+     */
+    private static final class Buckets<K> {
+
+        private final ConcurrentHashMap<K, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+        private final AtomicBoolean evicting = new AtomicBoolean();
+
+        private volatile int evictAt = MIN_EVICTION_SIZE;
+
+        /**
+         * Take a token from the bucket of the given key, creating the bucket if needed.
+         * The token is taken while the bucket is held in the map, so that an eviction never drops it meanwhile.
+         *
+         * @param key   the host or subnet
+         * @param rate  the rate of a new bucket
+         * @param burst the burst of a new bucket
+         * @return 0 if the token was taken, otherwise the time in nanoseconds until one becomes available
+         */
+        private long tryAcquire(K key, double rate, int burst) {
+            long[] wait = new long[1];
+            buckets.compute(key, (k, bucket) -> {
+                TokenBucket acquired = bucket != null ? bucket : new TokenBucket(rate, burst);
+                wait[0] = acquired.tryAcquire();
+                return acquired;
+            });
+
+            if (buckets.size() > evictAt) {
+                evict();
+            }
+
+            return wait[0];
+        }
+
+        private void refund(K key) {
+            buckets.computeIfPresent(key, (k, bucket) -> {
+                bucket.refund();
+                return bucket;
+            });
+        }
+
+        private void evict() {
+            if (!evicting.compareAndSet(false, true)) {
+                return;
+            }
+
+            try {
+                for (K key : buckets.keySet()) {
+                    buckets.computeIfPresent(key, (k, bucket) -> bucket.isFull() ? null : bucket);
+                }
+
+                evictAt = Math.max(MIN_EVICTION_SIZE, buckets.size() * 2);
+            } finally {
+                evicting.set(false);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.inspw.psexecj;
+
+import lombok.*;
+import lombok.experimental.Accessors;
+
+@Builder(builderMethodName = "prepare")
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@Accessors(fluent = true)
+@Getter
+public class AdmissionPolicy {
+
+    /**
+     * What to do with a new execution when the wait queue is full.
+     */
+    public enum RejectionPolicy {
+
+        /**
+         * Reject the new execution.
+         */
+        REJECT_NEW,
+
+        /**
+         * Reject the execution that has waited the longest, and queue the new one.
+         */
+        REJECT_OLDEST
+
+    }
+
+    /**
+     * The maximum number of executions running at the same time. Set to 0 for no limit.
+     */
+    @Builder.Default
+    private final int maxConcurrent = 64;
+
+    /**
+     * The maximum number of executions waiting to be admitted.
+     */
+    @Builder.Default
+    private final int maxQueued = 10_000;
+
+    /**
+     * What to do with a new execution when the wait queue is full.
+     */
+    @Builder.Default
+    @NonNull
+    private final RejectionPolicy rejectionPolicy = RejectionPolicy.REJECT_NEW;
+
+    /**
+     * The number of executions started per second against each host. Set to 0 for no limit.
+     */
+    @Builder.Default
+    private final double hostRate = 0;
+
+    /**
+     * The number of executions that may start at once against each host before the host rate applies.
+     */
+    @Builder.Default
+    private final int hostBurst = 1;
+
+    /**
+     * The prefix length of the IPv4 subnets that hosts are grouped into. Hosts that are not
+     * IPv4 addresses are not subject to the subnet rate.
+     */
+    @Builder.Default
+    private final int subnetPrefixLength = 24;
+
+    /**
+     * The number of executions started per second against each subnet. Set to 0 for no limit.
+     */
+    @Builder.Default
+    private final double subnetRate = 0;
+
+    /**
+     * The number of executions that may start at once against each subnet before the subnet rate applies.
+     */
+    @Builder.Default
+    private final int subnetBurst = 1;
+
+}
@@ -0,0 +1,26 @@
+package com.inspw.psexecj;
+
+import java.util.concurrent.CompletableFuture;
+
+public interface AsyncExecutor {
+
+    /**
+     * Submit the given PsExec command for execution without blocking the calling thread.
+     * The returned future completes once the spawned program has terminated.
+     * @param command the command to execute
+     * @return the future result of the execution
+     */
+    default CompletableFuture<ExecutionResult> submit(Command command) {
+        return submit(command, null);
+    }
+
+    /**
+     * Submit the given PsExec command for execution against a single computer, instead of
+     * the computers of the command, without blocking the calling thread.
+     * @param command  the command to execute
+     * @param computer the computer to target, or null to target the computers of the command
+     * @return the future result of the execution
+     */
+    CompletableFuture<ExecutionResult> submit(Command command, String computer);
+
+}
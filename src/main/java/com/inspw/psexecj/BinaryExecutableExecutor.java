@@ -1,31 +1,22 @@
 package com.inspw.psexecj;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.*;
-import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
 
 @Getter
 @Setter
-public class BinaryExecutableExecutor implements Executor {
+public class BinaryExecutableExecutor extends ProcessExecutor {
 
     /**
      * The executable file to use.
      */
     private File exeFile;
 
-    /**
-     * The timeout in milliseconds when executing the executable.
-     * This timeout is measured at the start of an execution of the PsExec program.
-     * It is mainly used to kill PsExec when stuck in an unresponsive state.
-     * Set to 0 to disable execution timeout.
-     */
-    private int executeTimeout;
-
     /**
      * Suppress the display of the license dialog.
      * This is specific to the PsExec.exe implementation.
@@ -38,6 +29,21 @@ public class BinaryExecutableExecutor implements Executor {
      */
     private boolean noBanner = true;
 
+    /**
+     * Record the programs copied to each computer, to skip copying a program a computer already holds,
+     * and to overwrite a program a computer holds an outdated copy of.
+     * Only applies to commands copying their program and submitted against a single computer.
+     * Set to null to leave copying to the settings of each command.
+     */
+    private CopyCache copyCache;
+
+    /**
+     * The most recently compiled template, reused while the same command is submitted to single computers.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile CommandTemplate lastTemplate;
+
     /**
      * Create a command executor instance.
      *
@@ -45,8 +51,8 @@ public class BinaryExecutableExecutor implements Executor {
      * @param executeTimeout the timeout in milliseconds
      */
     public BinaryExecutableExecutor(File exeFile, int executeTimeout) {
+        super(executeTimeout);
         this.exeFile = exeFile;
-        this.executeTimeout = executeTimeout;
     }
 
     /**
@@ -65,163 +71,120 @@ public class BinaryExecutableExecutor implements Executor {
      * @return the crafted string of the command
      */
     private String[] craft(Command command) {
-        List<String> tokens = new ArrayList<>();
-        tokens.add(getExeFile().getAbsolutePath());
-
-        if (isAcceptEula()) {
-            tokens.add("-accepteula");
-        }
-
-        if (isNoBanner()) {
-            tokens.add("-nobanner");
-        }
-
-        if (!command.computers().isEmpty() && command.computerListFile() == null) {
-            tokens.add(String.format("\\\\%s", String.join(",", command.computers())));
-        }
-
-        if (command.computerListFile() != null) {
-            tokens.add(String.format("@\"%s\"", command.computerListFile()));
-        }
+        return compile(command).craft();
+    }
 
-        if (command.username() != null) {
-            tokens.add("-u");
-            tokens.add(command.username());
+    /**
+     * Compile the given command into a reusable template, crafted with the current settings of this executor.
+     * The template does not reflect later changes to the settings.
+     *
+     * @param command the command to compile
+     * @return the compiled template
+     */
+    public CommandTemplate compile(Command command) {
+        return new CommandTemplate(command, getExeFile(), isAcceptEula(), isNoBanner());
+    }
 
-            if (command.password() != null) {
-                tokens.add("-p");
-                tokens.add(command.password());
-            }
-        }
+    @Override
+    protected ProcessBuilder prepare(Command command, String computer) {
+        return new ProcessBuilder(computer == null ? craft(command) : compile(command).craft(computer, null));
+    }
 
-        if (command.timeout() > 0) {
-            tokens.add("-n");
-            tokens.add(Integer.toString(command.timeout()));
-        }
+    /**
+     * Submit the given PsExec command for execution without blocking the calling thread.
+     * Cancelling the returned future kills the process tree of the execution.
+     *
+     * @param command the command to execute
+     * @return the future result of the execution
+     */
+    @Override
+    public CompletableFuture<ExecutionResult> submit(Command command) {
+        String[] cmdarray;
 
-        if (command.serviceName() != null) {
-            tokens.add("-r");
-            tokens.add(command.serviceName());
+        try {
+            cmdarray = craft(command);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
         }
 
-        if (command.runElevated()) {
-            tokens.add("-h");
-        }
+        return launch(command, new ProcessBuilder(cmdarray));
+    }
 
-        if (command.runLimited()) {
-            tokens.add("-l");
+    @Override
+    public CompletableFuture<ExecutionResult> submit(Command command, String computer) {
+        if (computer == null) {
+            return submit(command);
         }
 
-        if (command.asSystem() && !command.doNotLoadProfile()) {
-            tokens.add("-s");
-        }
+        CommandTemplate template = lastTemplate;
 
-        if (command.doNotLoadProfile()) {
-            tokens.add("-e");
-        }
+        if (template == null || !template.isCompiledFrom(command, getExeFile(), isAcceptEula(), isNoBanner())) {
+            try {
+                template = compile(command);
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
 
-        if (command.logonUI()) {
-            tokens.add("-x");
+            lastTemplate = template;
         }
 
-        if (command.session() != Command.SESSION_NONE) {
-            tokens.add("-i");
+        return submit(template, computer);
+    }
 
-            if (command.session() != Command.SESSION_ANY) {
-                tokens.add(Integer.toString(command.session()));
-            }
-        }
+    /**
+     * Submit a compiled command for execution against a single computer, without blocking the calling thread.
+     *
+     * @param template the compiled command
+     * @param computer the computer to target
+     * @return the future result of the execution
+     */
+    public CompletableFuture<ExecutionResult> submit(CommandTemplate template, String computer) {
+        return submit(template, computer, null);
+    }
 
-        if (command.copy()) {
-            tokens.add("-c");
+    /**
+     * Submit a compiled command for execution against a single computer with different arguments,
+     * without blocking the calling thread.
+     *
+     * @param template  the compiled command
+     * @param computer  the computer to target
+     * @param arguments the arguments to pass instead of the arguments of the command, or null to keep them
+     * @return the future result of the execution
+     */
+    public CompletableFuture<ExecutionResult> submit(CommandTemplate template, String computer, String[] arguments) {
+        Command command = template.command().withTarget(computer, arguments);
+        CopyCache copyCache = getCopyCache();
 
-            switch (command.copyOverride()) {
-                case Command.COPY_OVERRIDE_ALWAYS:
-                    tokens.add("-f");
-                    break;
-                case Command.COPY_OVERRIDE_NEWER:
-                    tokens.add("-v");
-                    break;
-            }
+        if (copyCache == null || !command.copy()) {
+            return launch(command, new ProcessBuilder(template.craft(computer, arguments)));
         }
 
-        if (command.workingDirectory() != null) {
-            tokens.add("-w");
-            tokens.add(command.workingDirectory());
-        }
+        File program = new File(command.cmd());
+        String hash;
 
-        if (command.detach()) {
-            tokens.add("-d");
+        try {
+            hash = copyCache.hash(program);
+        } catch (IOException e) {
+            // Let PsExec report the program it cannot copy.
+            return launch(command, new ProcessBuilder(template.craft(computer, arguments)));
         }
 
-        switch (command.priority()) {
-            case Command.PRIORITY_BACKGROUND:
-                tokens.add("-background");
-                break;
-            case Command.PRIORITY_LOW:
-                tokens.add("-low");
-                break;
-            case Command.PRIORITY_BELOW_NORMAL:
-                tokens.add("-belownormal");
-                break;
-            case Command.PRIORITY_ABOVE_NORMAL:
-                tokens.add("-abovenormal");
+        switch (copyCache.state(computer, program.getName(), hash)) {
+            case DELIVERED:
+                return launch(command, new ProcessBuilder(template.withoutCopy().craft(computer, arguments)));
+            case STALE:
+                template = template.withForcedCopy();
                 break;
-            case Command.PRIORITY_HIGH:
-                tokens.add("-high");
-                break;
-            case Command.PRIORITY_REALTIME:
-                tokens.add("-realtime");
-                break;
-        }
-
-        if (command.processors() != null) {
-            tokens.add("-a");
-            tokens.add(Arrays.stream(command.processors())
-                    .mapToObj(Integer::toString)
-                    .collect(Collectors.joining(","))
-            );
-        }
-
-        if (command.cmd() == null) {
-            throw new NullPointerException();
-        }
-
-        tokens.add(command.cmd());
-
-        if (command.arguments() != null) {
-            Collections.addAll(tokens, command.arguments());
         }
 
-        String[] cmdarray = new String[tokens.size()];
-        tokens.toArray(cmdarray);
-
-        return cmdarray;
-    }
-
-    @Override
-    public int execute(Command command) throws IOException {
-        Runtime rt = Runtime.getRuntime();
-
-        try {
-            String[] cmdarray = craft(command);
-            Process proc = rt.exec(cmdarray);
-
-            if (getExecuteTimeout() <= 0) {
-                proc.waitFor();
-            } else {
-                if (!proc.waitFor(getExecuteTimeout(), TimeUnit.MILLISECONDS)) {
-                    proc.destroyForcibly();
-                    // Assume error if timeout was reached.
-                    return -1;
-                }
+        // Record the delivery before the result is handed out, so that the next submit already skips the copy.
+        // Invalidations made while the program is copied win over the delivery.
+        long version = copyCache.version();
+        return launch(command, new ProcessBuilder(template.craft(computer, arguments)), r -> {
+            if (r.succeeded()) {
+                copyCache.delivered(computer, program.getName(), hash, version);
             }
-
-            return proc.exitValue();
-        } catch (InterruptedException e) {
-            // Assume error if timeout was interrupted.
-            return -1;
-        }
+        });
     }
 
 }
@@ -0,0 +1,66 @@
+package com.inspw.psexecj;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared pool of reusable byte arrays, grouped by their size.
+ */
+final class BufferPool {
+
+    /**
+     * The maximum number of idle arrays kept for each size.
+     */
+    static final int MAX_IDLE_PER_SIZE = 256;
+
+    private static final ConcurrentHashMap<Integer, Bucket> BUCKETS = new ConcurrentHashMap<>();
+
+    private BufferPool() {
+    }
+
+    /**
+     * Take an array of the given size from the pool, or allocate one if none is idle.
+     * The contents of the returned array are undefined.
+     *
+     * @param size the size of the array
+     * @return the array
+     */
+    static byte[] acquire(int size) {
+        Bucket bucket = BUCKETS.get(size);
+        byte[] buffer = bucket == null ? null : bucket.arrays.poll();
+
+        if (buffer == null) {
+            return new byte[size];
+        }
+
+        bucket.idle.decrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Return an array to the pool. The array must no longer be used by the caller.
+     *
+     * @param buffer the array to return
+     */
+    static void release(byte[] buffer) {
+        Bucket bucket = BUCKETS.computeIfAbsent(buffer.length, size -> new Bucket());
+
+        if (bucket.idle.incrementAndGet() > MAX_IDLE_PER_SIZE) {
+            bucket.idle.decrementAndGet();
+            return;
+        }
+
+        bucket.arrays.offer(buffer);
+    }
+
+    private static final class Bucket {
+
+        private final Queue<byte[]> arrays = new ConcurrentLinkedQueue<>();
+
+        private final AtomicInteger idle = new AtomicInteger();
+
+    }
+
+}
@@ -0,0 +1,175 @@
+package com.inspw.psexecj;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Stream retaining the head and tail of the written bytes in pooled buffers,
+ * optionally spilling everything to a temporary file once they overflow.
+ */
+class CaptureOutputStream extends OutputStream {
+
+    private final OutputCapture capture;
+
+    private long size;
+
+    private byte[] head;
+
+    private int headLength;
+
+    private byte[] tail;
+
+    private int tailEnd;
+
+    private int tailLength;
+
+    private Path file;
+
+    private FileChannel channel;
+
+    private CapturedOutput result;
+
+    /**
+     * Whether the result was handed out, or given up on because the stream was not closed yet.
+     */
+    private boolean detached;
+
+    /**
+     * Create a capturing stream.
+     *
+     * @param capture the capture settings
+     */
+    CaptureOutputStream(OutputCapture capture) {
+        this.capture = capture;
+        this.head = BufferPool.acquire(Math.max(0, capture.headSize()));
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        size += len;
+
+        if (channel != null) {
+            writeFully(ByteBuffer.wrap(b, off, len));
+            return;
+        }
+
+        int count = Math.min(len, head.length - headLength);
+        System.arraycopy(b, off, head, headLength, count);
+        headLength += count;
+        off += count;
+        len -= count;
+
+        if (len == 0) {
+            return;
+        }
+
+        int capacity = Math.max(0, capture.spill() && capture.spillThreshold() > 0
+                ? capture.spillThreshold() - head.length
+                : capture.tailSize());
+
+        if (capture.spill() && tailLength + len > capacity) {
+            spill();
+            writeFully(ByteBuffer.wrap(b, off, len));
+            return;
+        }
+
+        if (capacity == 0) {
+            return;
+        }
+
+        if (tail == null) {
+            tail = BufferPool.acquire(capacity);
+        }
+
+        if (len >= capacity) {
+            System.arraycopy(b, off + len - capacity, tail, 0, capacity);
+            tailEnd = 0;
+            tailLength = capacity;
+            return;
+        }
+
+        int first = Math.min(len, capacity - tailEnd);
+        System.arraycopy(b, off, tail, tailEnd, first);
+        System.arraycopy(b, off + first, tail, 0, len - first);
+        tailEnd = (tailEnd + len) % capacity;
+        tailLength = Math.min(capacity, tailLength + len);
+    }
+
+    /**
+     * Move the retained bytes into a new spill file and release the buffers.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    private void spill() throws IOException {
+        file = capture.spillDirectory() == null
+                ? Files.createTempFile("psexecj-", ".out")
+                : Files.createTempFile(capture.spillDirectory().toPath(), "psexecj-", ".out");
+        channel = FileChannel.open(file, StandardOpenOption.WRITE);
+
+        writeFully(ByteBuffer.wrap(head, 0, headLength));
+
+        if (tail != null) {
+            int start = (tailEnd - tailLength + tail.length) % tail.length;
+            int first = Math.min(tailLength, tail.length - start);
+            writeFully(ByteBuffer.wrap(tail, start, first));
+            writeFully(ByteBuffer.wrap(tail, 0, tailLength - first));
+            BufferPool.release(tail);
+            tail = null;
+        }
+
+        BufferPool.release(head);
+        head = null;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (result != null) {
+            return;
+        }
+
+        if (channel != null) {
+            channel.close();
+            result = new CapturedOutput(size, file);
+        } else {
+            int tailStart = tail == null ? 0 : (tailEnd - tailLength + tail.length) % tail.length;
+            result = new CapturedOutput(size, head, headLength, tail, tailStart, tailLength);
+        }
+
+        if (detached) {
+            // Nobody holds the output, so give back its buffers and delete its spill file right away.
+            result.close();
+        }
+    }
+
+    /**
+     * Hand out the captured output, at most once. If the stream is not closed yet, the output is given up on
+     * and released as soon as the stream is closed.
+     *
+     * @return the captured output, or null if the stream is not closed yet or the output was handed out before
+     */
+    synchronized CapturedOutput detach() {
+        if (detached) {
+            return null;
+        }
+
+        detached = true;
+        return result;
+    }
+
+}
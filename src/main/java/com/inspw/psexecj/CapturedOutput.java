@@ -0,0 +1,294 @@
+package com.inspw.psexecj;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * The captured output of one output stream of an execution.
+ * Either the head and tail of the output are held in memory, or the whole output is held in a spill file.
+ * Closing the instance returns its buffers to the pool and deletes its spill file.
+ */
+public class CapturedOutput implements Closeable {
+
+    private final long size;
+
+    private final long dropped;
+
+    private final Path file;
+
+    private byte[] head;
+
+    private final int headLength;
+
+    private byte[] tail;
+
+    private final int tailStart;
+
+    private final int tailLength;
+
+    /**
+     * Create output held in memory.
+     *
+     * @param size       the total number of bytes produced
+     * @param head       the head buffer
+     * @param headLength the number of bytes in the head buffer
+     * @param tail       the tail ring buffer, may be null if empty
+     * @param tailStart  the position of the oldest byte in the tail ring buffer
+     * @param tailLength the number of bytes in the tail ring buffer
+     */
+    CapturedOutput(long size, byte[] head, int headLength, byte[] tail, int tailStart, int tailLength) {
+        this.size = size;
+        this.dropped = size - headLength - tailLength;
+        this.file = null;
+        this.head = head;
+        this.headLength = headLength;
+        this.tail = tail;
+        this.tailStart = tailStart;
+        this.tailLength = tailLength;
+    }
+
+    /**
+     * Create output held in a spill file.
+     *
+     * @param size the total number of bytes produced
+     * @param file the spill file
+     */
+    CapturedOutput(long size, Path file) {
+        this.size = size;
+        this.dropped = 0;
+        this.file = file;
+        this.headLength = 0;
+        this.tailStart = 0;
+        this.tailLength = 0;
+    }
+
+    /**
+     * Get the total number of bytes the program wrote to the stream.
+     *
+     * @return the number of bytes
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Get the number of bytes between the head and the tail that were not retained.
+     *
+     * @return the number of dropped bytes
+     */
+    public long dropped() {
+        return dropped;
+    }
+
+    /**
+     * Check whether some of the output was dropped.
+     *
+     * @return true if the retained output is incomplete
+     */
+    public boolean isTruncated() {
+        return dropped > 0;
+    }
+
+    /**
+     * Check whether the output was spilled to a temporary file.
+     *
+     * @return true if the output is held in a file
+     */
+    public boolean isSpilled() {
+        return file != null;
+    }
+
+    /**
+     * Open a stream reading the retained output. If output was dropped, the tail directly follows the head.
+     * Output held in memory is read from the pooled buffers without copying them, so once this output is closed,
+     * reading the stream fails instead of reading buffers handed to another execution.
+     *
+     * @return the input stream
+     * @throws IOException if an I/O error occurs
+     */
+    public InputStream openStream() throws IOException {
+        if (file != null) {
+            return Files.newInputStream(file);
+        }
+
+        checkOpen();
+        return new RetainedInputStream();
+    }
+
+    /**
+     * Get the retained output as a read-only buffer. Spilled output is memory-mapped instead of read.
+     *
+     * @return the byte buffer
+     * @throws IOException if an I/O error occurs
+     */
+    public ByteBuffer toByteBuffer() throws IOException {
+        if (file != null) {
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Spilled output is too large to map into a single buffer");
+            }
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(headLength + tailLength);
+
+        synchronized (this) {
+            checkOpen();
+            read(0, buffer.array(), 0, buffer.capacity());
+        }
+
+        return buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Decode the retained output into a string.
+     *
+     * @param charset the charset to decode with
+     * @return the decoded output
+     * @throws IOException if an I/O error occurs
+     */
+    public String toString(Charset charset) throws IOException {
+        return charset.decode(toByteBuffer()).toString();
+    }
+
+    /**
+     * Copy the retained output into a capture of its own, which is closed independently of this one.
+     * Output held in memory is copied into buffers taken from the pool, spilled output into a new spill file
+     * next to the original.
+     *
+     * @return the copy
+     * @throws IOException if this output is closed or an I/O error occurs copying the spill file
+     */
+    CapturedOutput copy() throws IOException {
+        if (file != null) {
+            Path copy = Files.createTempFile(file.toAbsolutePath().getParent(), "psexecj-", ".out");
+
+            try {
+                Files.copy(file, copy, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                Files.deleteIfExists(copy);
+                throw e;
+            }
+
+            return new CapturedOutput(size, copy);
+        }
+
+        synchronized (this) {
+            checkOpen();
+
+            byte[] headCopy = BufferPool.acquire(head.length);
+            System.arraycopy(head, 0, headCopy, 0, headLength);
+            byte[] tailCopy = null;
+
+            if (tail != null) {
+                tailCopy = BufferPool.acquire(tail.length);
+                System.arraycopy(tail, 0, tailCopy, 0, tail.length);
+            }
+
+            return new CapturedOutput(size, headCopy, headLength, tailCopy, tailStart, tailLength);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (file != null) {
+            Files.deleteIfExists(file);
+            return;
+        }
+
+        synchronized (this) {
+            if (head != null) {
+                BufferPool.release(head);
+                head = null;
+            }
+
+            if (tail != null) {
+                BufferPool.release(tail);
+                tail = null;
+            }
+        }
+    }
+
+    private synchronized void checkOpen() throws IOException {
+        if (head == null) {
+            throw new IOException("Captured output is closed");
+        }
+    }
+
+    /**
+     * Copy retained output held in memory, as if the tail directly followed the head.
+     * Must be called holding the lock of this instance, while it is open.
+     *
+     * @param position the position in the retained output to copy from
+     * @param b        the array to copy into
+     * @param off      the offset in the array
+     * @param len      the number of bytes to copy
+     */
+    private void read(int position, byte[] b, int off, int len) {
+        int end = position + len;
+
+        if (position < headLength) {
+            int n = Math.min(end, headLength) - position;
+            System.arraycopy(head, position, b, off, n);
+            position += n;
+            off += n;
+        }
+
+        while (position < end) {
+            int index = (tailStart + position - headLength) % tail.length;
+            int n = Math.min(end - position, tail.length - index);
+            System.arraycopy(tail, index, b, off, n);
+            position += n;
+            off += n;
+        }
+    }
+
+    /**
+     * Stream over the retained output held in memory, failing once the output is closed.
+     */
+    private class RetainedInputStream extends InputStream {
+
+        private int position;
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+
+            synchronized (CapturedOutput.this) {
+                checkOpen();
+
+                int n = Math.min(len, available());
+
+                if (n == 0) {
+                    return len == 0 ? 0 : -1;
+                }
+
+                CapturedOutput.this.read(position, b, off, n);
+                position += n;
+                return n;
+            }
+        }
+
+        @Override
+        public int available() {
+            return headLength + tailLength - position;
+        }
+
+    }
+
+}
@@ -0,0 +1,74 @@
+package com.inspw.psexecj;
+
+import lombok.Getter;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Tracks the health of the hosts targeted through another executor and fails fast for hosts
+ * that keep failing. Once a host fails the configured number of times in a row, its circuit opens and
+ * executions against it complete as {@link Termination#REJECTED} without contacting it. After the open
+ * duration, a single probe execution is let through; its success closes the circuit again.
+ */
+@Getter
+public class CircuitBreakerExecutor implements AsyncExecutor {
+
+    /**
+     * The executor running the executions against healthy hosts.
+     */
+    private final AsyncExecutor executor;
+
+    /**
+     * The circuit breaker policy.
+     */
+    private final CircuitBreakerPolicy policy;
+
+    /**
+     * The health of the recently contacted hosts.
+     */
+    private final HostHealthCache health;
+
+    /**
+     * Create a circuit breaker executor.
+     *
+     * @param executor the executor running the executions against healthy hosts
+     * @param policy   the circuit breaker policy
+     */
+    public CircuitBreakerExecutor(AsyncExecutor executor, CircuitBreakerPolicy policy) {
+        this.executor = executor;
+        this.policy = policy;
+        this.health = new HostHealthCache(policy.ttl(), policy.capacity());
+    }
+
+    @Override
+    public CompletableFuture<ExecutionResult> submit(Command command, String computer) {
+        long start = System.nanoTime();
+        HostHealth host = health.track(computer != null ? computer : command.targetName(), start);
+
+        if (!host.tryAcquire(start, policy.openDuration())) {
+            return CompletableFuture.completedFuture(
+                    ExecutionResult.rejected("Circuit is open for " + host.host()));
+        }
+
+        CompletableFuture<ExecutionResult> execution;
+
+        try {
+            execution = executor.submit(command, computer);
+        } catch (RuntimeException e) {
+            execution = CompletableFuture.failedFuture(e);
+        }
+
+        execution.whenComplete((result, e) -> {
+            if (result == null || result.termination() == Termination.KILLED
+                    || result.termination() == Termination.INTERRUPTED
+                    || result.termination() == Termination.REJECTED) {
+                host.release();
+            } else {
+                long end = System.nanoTime();
+                host.record(end, policy.failureOn().test(result), end - start, policy.failureThreshold());
+            }
+        });
+        return execution;
+    }
+
+}
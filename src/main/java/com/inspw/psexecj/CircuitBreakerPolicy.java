@@ -0,0 +1,46 @@
+package com.inspw.psexecj;
+
+import lombok.*;
+import lombok.experimental.Accessors;
+
+import java.util.function.Predicate;
+
+@Builder(builderMethodName = "prepare")
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@Accessors(fluent = true)
+@Getter
+public class CircuitBreakerPolicy {
+
+    /**
+     * The number of consecutive failures that opens the circuit of a host.
+     */
+    @Builder.Default
+    private final int failureThreshold = 3;
+
+    /**
+     * The time in milliseconds a circuit stays open before a single probe execution is let through.
+     */
+    @Builder.Default
+    private final long openDuration = 60_000;
+
+    /**
+     * The time in milliseconds after which the health of a host that was not contacted is forgotten.
+     */
+    @Builder.Default
+    private final long ttl = 3_600_000;
+
+    /**
+     * The maximum number of hosts whose health is remembered. The least recently contacted hosts
+     * are forgotten first.
+     */
+    @Builder.Default
+    private final int capacity = 100_000;
+
+    /**
+     * Decides whether an execution result counts as a failure of its host.
+     */
+    @Builder.Default
+    @NonNull
+    private final Predicate<ExecutionResult> failureOn = RetryPolicy::isTransient;
+
+}
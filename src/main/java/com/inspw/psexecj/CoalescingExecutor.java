@@ -0,0 +1,211 @@
+package com.inspw.psexecj;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shares one execution between identical commands submitted while it is in flight.
+ * Commands are identical when they run the same program with the same options against the same computer.
+ * Commands delivering their output to an output sink are never shared, as each expects its own output.
+ * Results of exited executions can optionally be reused for a short time, for idempotent read-only commands.
+ * Every submitter receives its own copy of the captured output, so closing it does not affect the other submitters.
+ */
+@Getter
+@Setter
+public class CoalescingExecutor implements AsyncExecutor {
+
+    /**
+     * The executor running the shared executions.
+     */
+    @Setter(AccessLevel.NONE)
+    private final AsyncExecutor executor;
+
+    /**
+     * The time in milliseconds the result of an exited execution is reused for identical commands.
+     * Set to 0 to share in-flight executions only.
+     */
+    private long resultTtl;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final ConcurrentHashMap<List<Object>, Flight> flights = new ConcurrentHashMap<>();
+
+    /**
+     * Create a coalescing executor.
+     *
+     * @param executor the executor running the shared executions
+     */
+    public CoalescingExecutor(AsyncExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Submit the given command, joining an identical execution in flight if there is one.
+     * Cancelling the returned future only cancels the shared execution once all of its submitters cancelled.
+     *
+     * @param command  the command to execute
+     * @param computer the computer to target, or null to target the computers of the command
+     * @return the future result of the shared execution
+     */
+    @Override
+    public CompletableFuture<ExecutionResult> submit(Command command, String computer) {
+        if (command.outputSink() != OutputSink.DISCARD) {
+            return executor.submit(command, computer);
+        }
+
+        List<Object> key = command.fingerprint(computer);
+
+        while (true) {
+            Flight flight = flights.get(key);
+
+            if (flight != null && flight.isReusable()) {
+                CompletableFuture<ExecutionResult> joined = flight.join();
+
+                if (joined != null) {
+                    return joined;
+                }
+            }
+
+            Flight created = new Flight();
+
+            if (flight == null ? flights.putIfAbsent(key, created) == null : flights.replace(key, flight, created)) {
+                CompletableFuture<ExecutionResult> joined = created.join();
+                created.launch(key, command, computer);
+                return joined;
+            }
+        }
+    }
+
+    /**
+     * An execution shared by identical commands.
+     */
+    private class Flight {
+
+        private final CompletableFuture<ExecutionResult> result = new CompletableFuture<>();
+
+        /**
+         * The number of submitters waiting on the execution, or -1 once it may no longer be joined.
+         */
+        private final AtomicInteger waiters = new AtomicInteger();
+
+        private volatile CompletableFuture<ExecutionResult> execution;
+
+        private volatile boolean cached;
+
+        private volatile long expiresAt;
+
+        private void launch(List<Object> key, Command command, String computer) {
+            CompletableFuture<ExecutionResult> running;
+
+            try {
+                running = executor.submit(command, computer);
+            } catch (RuntimeException e) {
+                running = CompletableFuture.failedFuture(e);
+            }
+
+            execution = running;
+            running.whenComplete((r, e) -> {
+                long ttl = getResultTtl();
+                boolean cache = e == null && ttl > 0 && r.termination() == Termination.EXITED;
+
+                if (cache) {
+                    expiresAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttl);
+                    cached = true;
+                    DeadlineScheduler.shared().schedule(() -> {
+                        flights.remove(key, this);
+                        retire(r);
+                    }, ttl, TimeUnit.MILLISECONDS);
+                } else {
+                    flights.remove(key, this);
+                }
+
+                if (e != null) {
+                    result.completeExceptionally(e);
+                } else {
+                    result.complete(r);
+
+                    if (!cache) {
+                        retire(r);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Stop this flight from being joined and release the shared result, of which every submitter
+         * received a copy of its own.
+         *
+         * @param r the shared result
+         */
+        private synchronized void retire(ExecutionResult r) {
+            waiters.set(-1);
+            r.release();
+        }
+
+        /**
+         * Check whether this flight is still in flight, or holds a result that has not expired.
+         *
+         * @return true if the flight may be joined
+         */
+        private boolean isReusable() {
+            return waiters.get() >= 0 && (!result.isDone() || cached && System.nanoTime() - expiresAt < 0);
+        }
+
+        /**
+         * Join this flight with a future of its own, so that one submitter cancelling does not affect the others.
+         * Each submitter receives a copy of the result with captured output of its own to close.
+         *
+         * @return the future result, or null if the flight may no longer be joined
+         */
+        private synchronized CompletableFuture<ExecutionResult> join() {
+            int count;
+
+            do {
+                count = waiters.get();
+
+                if (count < 0) {
+                    return null;
+                }
+            } while (!waiters.compareAndSet(count, count + 1));
+
+            // Joining under the lock keeps the shared result from being retired while it is copied.
+            CompletableFuture<ExecutionResult> joined = new CompletableFuture<>();
+            result.whenComplete((r, e) -> {
+                if (e != null) {
+                    joined.completeExceptionally(e);
+                    return;
+                }
+
+                ExecutionResult own;
+
+                try {
+                    own = r.copy();
+                } catch (IOException copyFailure) {
+                    joined.completeExceptionally(copyFailure);
+                    return;
+                }
+
+                if (!joined.complete(own)) {
+                    own.release();
+                }
+            });
+            joined.whenComplete((r, e) -> {
+                if (joined.isCancelled() && !result.isDone() && waiters.decrementAndGet() == 0
+                        && waiters.compareAndSet(0, -1)) {
+                    execution.cancel(true);
+                }
+            });
+            return joined;
+        }
+
+    }
+
+}
@@ -4,7 +4,12 @@ import lombok.*;
 import lombok.experimental.Accessors;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Builder(builderMethodName = "prepare")
 @AllArgsConstructor(access = AccessLevel.PRIVATE)
@@ -58,6 +63,14 @@ public class Command {
     @NonNull
     private final List<String> computers;
 
+    /**
+     * Sets of computers to target in addition to the computers, such as IPv4 subnets or numbered host names.
+     * Host sets are expanded lazily while the command is fanned out with a {@link FleetExecutor}.
+     */
+    @Singular("hosts")
+    @NonNull
+    private final List<HostSet> hostSets;
+
     /**
      * PsExec will execute the command on each of the computers listed in the file.
      */
@@ -179,4 +192,126 @@ public class Command {
     @Builder.Default
     private final String[] arguments = null;
 
+    /**
+     * The sink receiving the output of the executed program.
+     * By default the output is discarded without being read.
+     */
+    @Builder.Default
+    @NonNull
+    private final OutputSink outputSink = OutputSink.DISCARD;
+
+    /**
+     * Get the computers targeted by this command, followed by the computers of its host sets.
+     * The host sets are expanded one host at a time while the returned iterable is iterated, and the iterators
+     * it returns for host sets are {@link java.io.Closeable}, to stop expanding them before the end.
+     *
+     * @return the targeted computers
+     */
+    public Iterable<String> targets() {
+        if (hostSets.isEmpty()) {
+            return computers;
+        }
+
+        return () -> targets(target -> true);
+    }
+
+    /**
+     * Iterate over the targets of this command that pass the given filter.
+     *
+     * @param filter the filter the targets must pass
+     * @return the iterator, to close if it is not iterated to the end
+     */
+    TargetIterator targets(Predicate<String> filter) {
+        return new TargetIterator(computers, hostSets, filter);
+    }
+
+    /**
+     * Get the name of the targeted computers and host sets, joined with commas, the name of the computer list file
+     * prefixed with "@", or "local" if none are targeted.
+     *
+     * @return the name of the target
+     */
+    String targetName() {
+        if (computerListFile != null) {
+            return "@" + computerListFile.getName();
+        }
+
+        if (hostSets.isEmpty()) {
+            return computers.isEmpty() ? "local" : String.join(",", computers);
+        }
+
+        return Stream.concat(computers.stream(), hostSets.stream().map(HostSet::toString))
+                .collect(Collectors.joining(","));
+    }
+
+    /**
+     * Get the single computer targeted by this command.
+     *
+     * @return the computer, "local" if the command targets no computer, or null if it targets several
+     */
+    String singleTarget() {
+        if (computerListFile != null || !hostSets.isEmpty() || computers.size() > 1) {
+            return null;
+        }
+
+        return computers.isEmpty() ? "local" : computers.get(0);
+    }
+
+    /**
+     * Get a key identifying what this command executes, ignoring its output sink.
+     * Commands with equal fingerprints run the same program with the same options against the same computers.
+     *
+     * @param computer the computer to target instead of the computers of the command, or null to keep them
+     * @return the fingerprint
+     */
+    List<Object> fingerprint(String computer) {
+        return Arrays.asList(
+                computer != null ? computer : Arrays.asList(computers, hostSets, computerListFile),
+                username, password, timeout, serviceName, runElevated, runLimited, asSystem, doNotLoadProfile,
+                logonUI, session, copy, copyOverride, workingDirectory, priority, detach,
+                processors == null ? null : Arrays.toString(processors),
+                cmd, arguments == null ? null : Arrays.asList(arguments)
+        );
+    }
+
+    /**
+     * Create a copy of this command targeting a single computer, passing the given arguments.
+     *
+     * @param computer  the computer to target
+     * @param arguments the arguments to pass, or null to keep the arguments of this command
+     * @return the copied command
+     */
+    Command withTarget(String computer, String[] arguments) {
+        return new Command(Collections.singletonList(computer), Collections.emptyList(), null, username, password,
+                timeout, serviceName, runElevated, runLimited, asSystem, doNotLoadProfile, logonUI, session, copy,
+                copyOverride, workingDirectory, priority, detach, processors, cmd,
+                arguments == null ? this.arguments : arguments, outputSink);
+    }
+
+    /**
+     * Create a copy of this command running another program, discarding its output.
+     *
+     * @param cmd       the program to run
+     * @param arguments the arguments to pass to the program
+     * @return the copied command
+     */
+    Command withCmd(String cmd, String[] arguments) {
+        return new Command(computers, hostSets, computerListFile, username, password, timeout, serviceName,
+                runElevated, runLimited, asSystem, doNotLoadProfile, logonUI, session, copy, copyOverride,
+                workingDirectory, priority, detach, processors, cmd, arguments, OutputSink.DISCARD);
+    }
+
+    /**
+     * Create a copy of this command targeting the computers listed in the given file instead of its own.
+     *
+     * @param computerListFile the file listing the computers to target
+     * @param outputSink       the output sink of the copy
+     * @return the copied command
+     */
+    Command withComputerListFile(File computerListFile, OutputSink outputSink) {
+        return new Command(Collections.emptyList(), Collections.emptyList(), computerListFile, username, password,
+                timeout, serviceName, runElevated, runLimited, asSystem, doNotLoadProfile, logonUI, session, copy,
+                copyOverride, workingDirectory, priority, detach, processors, cmd, arguments, outputSink);
+    }
+
 }
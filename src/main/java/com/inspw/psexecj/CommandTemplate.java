@@ -0,0 +1,365 @@
+package com.inspw.psexecj;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A command precompiled into the fixed parts of its argument array.
+ * Crafting the arguments for a single computer only splices the computer and the arguments
+ * between the cached parts, which makes fanning one command out to many computers cheap.
+ */
+public class CommandTemplate {
+
+    /**
+     * The maximum length of a computers token expanded from host sets, that of a command line of the Windows
+     * command interpreter, well within the 32767 characters of a process command line.
+     */
+    static final int MAX_TARGET_LENGTH = 8191;
+
+    private final Command command;
+
+    private final File exeFile;
+
+    private final boolean acceptEula;
+
+    private final boolean noBanner;
+
+    /**
+     * The tokens preceding the computers token.
+     */
+    private final String[] prefix;
+
+    /**
+     * The computers token of the command itself, or null if it does not target other computers
+     * or targets host sets, which are only expanded when crafting the command itself.
+     */
+    private final String target;
+
+    /**
+     * The tokens following the computers token, up to and including the command to execute.
+     */
+    private final String[] suffix;
+
+    /**
+     * The arguments of the command itself.
+     */
+    private final String[] arguments;
+
+    /**
+     * The position of the copy flags in the suffix, or -1 if the command does not copy its program.
+     */
+    private final int copyIndex;
+
+    /**
+     * The number of copy flags, including the copy override flag.
+     */
+    private final int copyLength;
+
+    /**
+     * Compile the given command.
+     *
+     * @param command    the command to compile
+     * @param exeFile    the executable file to use
+     * @param acceptEula whether to suppress the display of the license dialog
+     * @param noBanner   whether to suppress the startup banner
+     */
+    CommandTemplate(Command command, File exeFile, boolean acceptEula, boolean noBanner) {
+        this.command = command;
+        this.exeFile = exeFile;
+        this.acceptEula = acceptEula;
+        this.noBanner = noBanner;
+
+        List<String> tokens = new ArrayList<>();
+        tokens.add(exeFile.getAbsolutePath());
+
+        if (acceptEula) {
+            tokens.add("-accepteula");
+        }
+
+        if (noBanner) {
+            tokens.add("-nobanner");
+        }
+
+        this.prefix = tokens.toArray(new String[0]);
+
+        if (command.computerListFile() != null) {
+            this.target = String.format("@\"%s\"", command.computerListFile());
+        } else if (!command.computers().isEmpty() && command.hostSets().isEmpty()) {
+            this.target = String.format("\\\\%s", String.join(",", command.computers()));
+        } else {
+            this.target = null;
+        }
+
+        tokens.clear();
+
+        if (command.username() != null) {
+            tokens.add("-u");
+            tokens.add(command.username());
+
+            if (command.password() != null) {
+                tokens.add("-p");
+                tokens.add(command.password());
+            }
+        }
+
+        if (command.timeout() > 0) {
+            tokens.add("-n");
+            tokens.add(Integer.toString(command.timeout()));
+        }
+
+        if (command.serviceName() != null) {
+            tokens.add("-r");
+            tokens.add(command.serviceName());
+        }
+
+        if (command.runElevated()) {
+            tokens.add("-h");
+        }
+
+        if (command.runLimited()) {
+            tokens.add("-l");
+        }
+
+        if (command.asSystem() && !command.doNotLoadProfile()) {
+            tokens.add("-s");
+        }
+
+        if (command.doNotLoadProfile()) {
+            tokens.add("-e");
+        }
+
+        if (command.logonUI()) {
+            tokens.add("-x");
+        }
+
+        if (command.session() != Command.SESSION_NONE) {
+            tokens.add("-i");
+
+            if (command.session() != Command.SESSION_ANY) {
+                tokens.add(Integer.toString(command.session()));
+            }
+        }
+
+        int copyIndex = -1;
+
+        if (command.copy()) {
+            copyIndex = tokens.size();
+            tokens.add("-c");
+
+            switch (command.copyOverride()) {
+                case Command.COPY_OVERRIDE_ALWAYS:
+                    tokens.add("-f");
+                    break;
+                case Command.COPY_OVERRIDE_NEWER:
+                    tokens.add("-v");
+                    break;
+            }
+        }
+
+        this.copyIndex = copyIndex;
+        this.copyLength = copyIndex < 0 ? 0 : tokens.size() - copyIndex;
+
+        if (command.workingDirectory() != null) {
+            tokens.add("-w");
+            tokens.add(command.workingDirectory());
+        }
+
+        if (command.detach()) {
+            tokens.add("-d");
+        }
+
+        switch (command.priority()) {
+            case Command.PRIORITY_BACKGROUND:
+                tokens.add("-background");
+                break;
+            case Command.PRIORITY_LOW:
+                tokens.add("-low");
+                break;
+            case Command.PRIORITY_BELOW_NORMAL:
+                tokens.add("-belownormal");
+                break;
+            case Command.PRIORITY_ABOVE_NORMAL:
+                tokens.add("-abovenormal");
+                break;
+            case Command.PRIORITY_HIGH:
+                tokens.add("-high");
+                break;
+            case Command.PRIORITY_REALTIME:
+                tokens.add("-realtime");
+                break;
+        }
+
+        if (command.processors() != null) {
+            tokens.add("-a");
+            tokens.add(Arrays.stream(command.processors())
+                    .mapToObj(Integer::toString)
+                    .collect(Collectors.joining(","))
+            );
+        }
+
+        if (command.cmd() == null) {
+            throw new NullPointerException();
+        }
+
+        tokens.add(command.cmd());
+
+        this.suffix = tokens.toArray(new String[0]);
+        this.arguments = command.arguments() == null ? new String[0] : command.arguments().clone();
+    }
+
+    /**
+     * Create a variant of the given template with different copy flags and command to execute.
+     *
+     * @param template  the template to vary
+     * @param cmd       the command to execute replacing that of the template
+     * @param copyFlags the copy flags replacing those of the template
+     */
+    private CommandTemplate(CommandTemplate template, String cmd, String... copyFlags) {
+        this.command = template.command;
+        this.exeFile = template.exeFile;
+        this.acceptEula = template.acceptEula;
+        this.noBanner = template.noBanner;
+        this.prefix = template.prefix;
+        this.target = template.target;
+        this.arguments = template.arguments;
+        this.copyIndex = copyFlags.length == 0 ? -1 : template.copyIndex;
+        this.copyLength = copyFlags.length;
+
+        String[] suffix = new String[template.suffix.length - template.copyLength + copyFlags.length];
+        int tail = template.copyIndex + template.copyLength;
+        System.arraycopy(template.suffix, 0, suffix, 0, template.copyIndex);
+        System.arraycopy(copyFlags, 0, suffix, template.copyIndex, copyFlags.length);
+        System.arraycopy(template.suffix, tail, suffix, template.copyIndex + copyFlags.length,
+                template.suffix.length - tail);
+        suffix[suffix.length - 1] = cmd;
+        this.suffix = suffix;
+    }
+
+    /**
+     * Get a variant of this template that does not copy the program to the remote computer, and runs the copy
+     * delivered there earlier by its file name instead of by its local path.
+     *
+     * @return the variant, or this template if it does not copy its program
+     */
+    CommandTemplate withoutCopy() {
+        return copyIndex < 0 ? this : new CommandTemplate(this, new File(command.cmd()).getName());
+    }
+
+    /**
+     * Get a variant of this template that copies the program to the remote computer even if it already exists there.
+     *
+     * @return the variant, or this template if it does not copy its program
+     */
+    CommandTemplate withForcedCopy() {
+        return copyIndex < 0 ? this : new CommandTemplate(this, command.cmd(), "-c", "-f");
+    }
+
+    /**
+     * Get the command this template was compiled from.
+     *
+     * @return the command
+     */
+    public Command command() {
+        return command;
+    }
+
+    /**
+     * Check whether this template was compiled from the given command and settings.
+     *
+     * @param command    the command
+     * @param exeFile    the executable file
+     * @param acceptEula whether the license dialog is suppressed
+     * @param noBanner   whether the startup banner is suppressed
+     * @return true if the template is up to date
+     */
+    boolean isCompiledFrom(Command command, File exeFile, boolean acceptEula, boolean noBanner) {
+        return this.command == command
+                && this.exeFile.equals(exeFile)
+                && this.acceptEula == acceptEula
+                && this.noBanner == noBanner;
+    }
+
+    /**
+     * Craft the argument array of the command itself.
+     * Host sets are expanded into the computers token, which is limited to {@link #MAX_TARGET_LENGTH} characters;
+     * larger host sets are meant to be run through a {@link FleetExecutor}, which expands them lazily.
+     *
+     * @return the crafted argument array
+     * @throws IllegalArgumentException if the host sets of the command expand past the limit
+     */
+    public String[] craft() {
+        if (target == null && !command.hostSets().isEmpty()) {
+            return splice(expandTarget(), arguments);
+        }
+
+        return splice(target, arguments);
+    }
+
+    /**
+     * Expand the computers and host sets of the command into a single computers token.
+     *
+     * @return the computers token
+     * @throws IllegalArgumentException if the token would exceed {@link #MAX_TARGET_LENGTH} characters
+     */
+    private String expandTarget() {
+        StringBuilder token = new StringBuilder("\\\\");
+
+        try (TargetIterator targets = command.targets(computer -> true)) {
+            while (targets.hasNext()) {
+                if (token.length() > 2) {
+                    token.append(',');
+                }
+
+                token.append(targets.next());
+
+                if (token.length() > MAX_TARGET_LENGTH) {
+                    throw new IllegalArgumentException("Host sets expand to too many computers for one PsExec "
+                            + "invocation, run the command through a FleetExecutor instead: " + command.targetName());
+                }
+            }
+        }
+
+        return token.toString();
+    }
+
+    /**
+     * Craft the argument array targeting a single computer instead of the computers of the command.
+     *
+     * @param computer the computer to target
+     * @return the crafted argument array
+     */
+    public String[] craft(String computer) {
+        return craft(computer, arguments);
+    }
+
+    /**
+     * Craft the argument array targeting a single computer, passing different arguments to the command.
+     *
+     * @param computer  the computer to target
+     * @param arguments the arguments to pass instead of the arguments of the command
+     * @return the crafted argument array
+     */
+    public String[] craft(String computer, String[] arguments) {
+        return splice("\\\\" + computer, arguments == null ? this.arguments : arguments);
+    }
+
+    private String[] splice(String target, String[] arguments) {
+        int targetLength = target == null ? 0 : 1;
+        String[] cmdarray = new String[prefix.length + targetLength + suffix.length + arguments.length];
+
+        System.arraycopy(prefix, 0, cmdarray, 0, prefix.length);
+
+        if (target != null) {
+            cmdarray[prefix.length] = target;
+        }
+
+        System.arraycopy(suffix, 0, cmdarray, prefix.length + targetLength, suffix.length);
+        System.arraycopy(arguments, 0, cmdarray, prefix.length + targetLength + suffix.length, arguments.length);
+
+        return cmdarray;
+    }
+
+}
@@ -0,0 +1,46 @@
+package com.inspw.psexecj;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Small shared pool of daemon threads on which asynchronous executions are completed.
+ * Waiting on processes is left to the JDK, so this pool only runs the short completion stages.
+ */
+final class CompletionPool {
+
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(
+            Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors())),
+            daemonThreadFactory("psexecj-completion-")
+    );
+
+    private CompletionPool() {
+    }
+
+    /**
+     * Get the shared completion pool.
+     *
+     * @return the pool instance
+     */
+    static ExecutorService get() {
+        return POOL;
+    }
+
+    /**
+     * Create a thread factory producing named daemon threads.
+     *
+     * @param prefix the prefix of the thread names
+     * @return the thread factory
+     */
+    static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+}
@@ -0,0 +1,313 @@
+package com.inspw.psexecj;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Record of the programs copied to remote computers, keyed by computer and program file name and holding the
+ * SHA-256 hash of the copied content. It lets an executor skip copying a program a computer already has, and
+ * overwrite a program a computer holds an outdated copy of.
+ *
+ * The record can be persisted in a file, to which each delivery is appended as a line.
+ * The file is compacted when it is loaded again.
+ */
+public class CopyCache {
+
+    /**
+     * The state of a program on a computer.
+     */
+    enum State {
+
+        /**
+         * The computer is not known to hold the program.
+         */
+        UNKNOWN,
+
+        /**
+         * The computer holds the same content of the program.
+         */
+        DELIVERED,
+
+        /**
+         * The computer holds different content under the file name of the program.
+         */
+        STALE
+
+    }
+
+    private final Path file;
+
+    /**
+     * The hash of the content delivered to each computer, keyed by computer and file name.
+     */
+    private final Map<String, String> delivered = new ConcurrentHashMap<>();
+
+    /**
+     * The hash of each local program, with the size and modification time it was computed for.
+     */
+    private final Map<File, FileHash> hashes = new ConcurrentHashMap<>();
+
+    /**
+     * The number of invalidations so far, guarded by this instance.
+     */
+    private long version;
+
+    /**
+     * Create a copy cache kept in memory only.
+     */
+    public CopyCache() {
+        this.file = null;
+    }
+
+    /**
+     * Create a copy cache persisted in the given file, loading the deliveries it records.
+     *
+     * @param file the file to persist the cache in
+     * @throws IOException if an I/O error occurs reading the file
+     */
+    public CopyCache(Path file) throws IOException {
+        this.file = file;
+
+        if (Files.exists(file)) {
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+
+            for (String line : lines) {
+                String[] fields = line.split("\t");
+
+                if (fields.length == 3) {
+                    delivered.put(key(fields[0], fields[1]), fields[2]);
+                }
+            }
+
+            // Compact the deliveries superseded by later lines.
+            if (lines.size() > delivered.size()) {
+                rewrite();
+            }
+        }
+    }
+
+    /**
+     * Get the number of recorded deliveries.
+     *
+     * @return the number of deliveries
+     */
+    public int size() {
+        return delivered.size();
+    }
+
+    /**
+     * Check whether the given program was delivered to the given computer with its current content.
+     *
+     * @param computer the computer
+     * @param program  the local program file
+     * @return true if the computer holds the current content of the program
+     * @throws IOException if an I/O error occurs hashing the program
+     */
+    public boolean isDelivered(String computer, File program) throws IOException {
+        return state(computer, program.getName(), hash(program)) == State.DELIVERED;
+    }
+
+    /**
+     * Forget the deliveries to the given computer, for example after it was reinstalled.
+     *
+     * @param computer the computer
+     * @throws IOException if an I/O error occurs persisting the cache
+     */
+    public synchronized void invalidate(String computer) throws IOException {
+        String prefix = computer.toLowerCase(Locale.ROOT) + "\t";
+        delivered.keySet().removeIf(key -> key.startsWith(prefix));
+        version++;
+        rewrite();
+    }
+
+    /**
+     * Forget the delivery of the given program to the given computer.
+     *
+     * @param computer the computer
+     * @param program  the name of the program file
+     * @throws IOException if an I/O error occurs persisting the cache
+     */
+    public synchronized void invalidate(String computer, String program) throws IOException {
+        delivered.remove(key(computer, program));
+        version++;
+        rewrite();
+    }
+
+    /**
+     * Forget all deliveries.
+     *
+     * @throws IOException if an I/O error occurs persisting the cache
+     */
+    public synchronized void invalidateAll() throws IOException {
+        delivered.clear();
+        version++;
+        rewrite();
+    }
+
+    /**
+     * Get the state of a program on a computer.
+     *
+     * @param computer the computer
+     * @param program  the name of the program file
+     * @param hash     the hash of the current content of the program
+     * @return the state
+     */
+    State state(String computer, String program, String hash) {
+        String deliveredHash = delivered.get(key(computer, program));
+
+        if (deliveredHash == null) {
+            return State.UNKNOWN;
+        }
+
+        return deliveredHash.equals(hash) ? State.DELIVERED : State.STALE;
+    }
+
+    /**
+     * Get the version of the cache, which changes with every invalidation.
+     *
+     * @return the version
+     */
+    synchronized long version() {
+        return version;
+    }
+
+    /**
+     * Record that a program was delivered to a computer. If persisting the delivery fails,
+     * it stays recorded in memory only.
+     *
+     * @param computer the computer
+     * @param program  the name of the program file
+     * @param hash     the hash of the delivered content
+     */
+    synchronized void delivered(String computer, String program, String hash) {
+        delivered(computer, program, hash, version);
+    }
+
+    /**
+     * Record that a program was delivered to a computer, unless the cache was invalidated since the delivery
+     * started. The invalidation may have been meant for the computer, whose state the delivery no longer proves.
+     * If persisting the delivery fails, it stays recorded in memory only.
+     *
+     * @param computer the computer
+     * @param program  the name of the program file
+     * @param hash     the hash of the delivered content
+     * @param started  the version of the cache when the delivery started
+     * @return true if the delivery was recorded
+     */
+    synchronized boolean delivered(String computer, String program, String hash, long started) {
+        if (started != version) {
+            return false;
+        }
+
+        if (hash.equals(delivered.put(key(computer, program), hash)) || file == null) {
+            return true;
+        }
+
+        String line = key(computer, program) + "\t" + hash + "\n";
+
+        try {
+            Files.write(file, line.getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            // The delivery is only copied again after a restart.
+        }
+
+        return true;
+    }
+
+    /**
+     * Get the SHA-256 hash of a local program, computed again only once its size or modification time changed.
+     *
+     * @param program the program file
+     * @return the hash as hexadecimal digits
+     * @throws IOException if an I/O error occurs reading the program
+     */
+    String hash(File program) throws IOException {
+        long length = program.length();
+        long lastModified = program.lastModified();
+        FileHash cached = hashes.get(program);
+
+        if (cached != null && cached.length == length && cached.lastModified == lastModified) {
+            return cached.hash;
+        }
+
+        MessageDigest digest;
+
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        byte[] buffer = new byte[OutputDrainer.BUFFER_SIZE];
+
+        try (InputStream in = Files.newInputStream(program.toPath())) {
+            int read;
+
+            while ((read = in.read(buffer)) >= 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+
+        StringBuilder hash = new StringBuilder(64);
+
+        for (byte b : digest.digest()) {
+            hash.append(Character.forDigit((b >> 4) & 15, 16)).append(Character.forDigit(b & 15, 16));
+        }
+
+        hashes.put(program, new FileHash(length, lastModified, hash.toString()));
+        return hash.toString();
+    }
+
+    private static String key(String computer, String program) {
+        return computer.toLowerCase(Locale.ROOT) + "\t" + program.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Rewrite the persisted file from the deliveries in memory, replacing it atomically.
+     */
+    private synchronized void rewrite() throws IOException {
+        if (file == null) {
+            return;
+        }
+
+        List<String> lines = new ArrayList<>();
+        delivered.forEach((key, hash) -> lines.add(key + "\t" + hash));
+        Collections.sort(lines);
+
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        Files.write(temp, lines, StandardCharsets.UTF_8);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static class FileHash {
+
+        private final long length;
+
+        private final long lastModified;
+
+        private final String hash;
+
+        private FileHash(long length, long lastModified, String hash) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+
+    }
+
+}
@@ -0,0 +1,242 @@
+package com.inspw.psexecj;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timer wheel running delayed tasks from a single thread, with constant cost to schedule and cancel.
+ * Deadlines are rounded up to the next tick. Expired tasks are handed to the shared completion pool,
+ * so they may block briefly without delaying other deadlines.
+ */
+final class DeadlineScheduler {
+
+    private static final DeadlineScheduler SHARED = new DeadlineScheduler(10, TimeUnit.MILLISECONDS, 512);
+
+    private final long tickNanos;
+
+    private final Bucket[] wheel;
+
+    private final int mask;
+
+    private final long startTime = System.nanoTime();
+
+    private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Create a timer wheel and start its thread.
+     *
+     * @param tickDuration the duration of a tick
+     * @param unit         the unit of the tick duration
+     * @param wheelSize    the number of buckets, rounded up to a power of two
+     */
+    DeadlineScheduler(long tickDuration, TimeUnit unit, int wheelSize) {
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.wheel = new Bucket[size];
+        this.mask = size - 1;
+
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+
+        Thread thread = CompletionPool.daemonThreadFactory("psexecj-deadline-").newThread(this::run);
+        thread.start();
+    }
+
+    /**
+     * Get the shared timer wheel, ticking every 10 milliseconds.
+     *
+     * @return the scheduler instance
+     */
+    static DeadlineScheduler shared() {
+        return SHARED;
+    }
+
+    /**
+     * Run the given task once the given delay has passed.
+     *
+     * @param task  the task to run
+     * @param delay the delay
+     * @param unit  the unit of the delay
+     * @return the handle to cancel the task with
+     */
+    Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(this, task, System.nanoTime() - startTime + unit.toNanos(Math.max(0, delay)));
+        added.add(timeout);
+        return timeout;
+    }
+
+    private void run() {
+        long tick = 0;
+
+        while (true) {
+            long deadline = tickNanos * (tick + 1);
+            long sleep;
+
+            while ((sleep = deadline - (System.nanoTime() - startTime)) > 0) {
+                LockSupport.parkNanos(sleep);
+            }
+
+            removeCancelled();
+            transferAdded(tick);
+            wheel[(int) (tick & mask)].expire(deadline);
+            tick++;
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void transferAdded(long tick) {
+        Timeout timeout;
+
+        while ((timeout = added.poll()) != null) {
+            if (timeout.state.get() != Timeout.PENDING) {
+                continue;
+            }
+
+            long ticks = Math.max(tick, (timeout.deadline + tickNanos - 1) / tickNanos - 1);
+            timeout.rounds = (ticks - tick) / wheel.length;
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    /**
+     * Handle of a scheduled task.
+     */
+    static final class Timeout {
+
+        private static final int PENDING = 0;
+
+        private static final int CANCELLED = 1;
+
+        private static final int EXPIRED = 2;
+
+        private final DeadlineScheduler scheduler;
+
+        private final Runnable task;
+
+        private final long deadline;
+
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        // Only accessed from the wheel thread.
+        private long rounds;
+
+        private Bucket bucket;
+
+        private Timeout next;
+
+        private Timeout previous;
+
+        private Timeout(DeadlineScheduler scheduler, Runnable task, long deadline) {
+            this.scheduler = scheduler;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancel the task if it has not run yet.
+         *
+         * @return true if the task was cancelled, false if it already expired or was cancelled
+         */
+        boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED)) {
+                return false;
+            }
+
+            scheduler.cancelled.add(this);
+            return true;
+        }
+
+        /**
+         * Check whether the task was handed off to run.
+         *
+         * @return true if the deadline has passed
+         */
+        boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        private void expire() {
+            if (state.compareAndSet(PENDING, EXPIRED)) {
+                CompletionPool.get().execute(task);
+            }
+        }
+
+    }
+
+    /**
+     * Doubly linked list of the timeouts in one slot of the wheel. Only accessed from the wheel thread.
+     */
+    private static final class Bucket {
+
+        private Timeout head;
+
+        private Timeout tail;
+
+        private void add(Timeout timeout) {
+            timeout.bucket = this;
+
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.previous = tail;
+                tail = timeout;
+            }
+        }
+
+        private void remove(Timeout timeout) {
+            if (timeout.previous != null) {
+                timeout.previous.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+
+            if (timeout.next != null) {
+                timeout.next.previous = timeout.previous;
+            } else {
+                tail = timeout.previous;
+            }
+
+            timeout.bucket = null;
+            timeout.next = null;
+            timeout.previous = null;
+        }
+
+        private void expire(long deadline) {
+            Timeout timeout = head;
+
+            while (timeout != null) {
+                Timeout next = timeout.next;
+
+                if (timeout.rounds <= 0 && timeout.deadline <= deadline) {
+                    remove(timeout);
+                    timeout.expire();
+                } else if (timeout.state.get() == Timeout.CANCELLED) {
+                    remove(timeout);
+                } else {
+                    timeout.rounds--;
+                }
+
+                timeout = next;
+            }
+        }
+
+    }
+
+}
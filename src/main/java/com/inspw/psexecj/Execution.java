@@ -0,0 +1,158 @@
+package com.inspw.psexecj;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The state of a single execution, from submission until its result is produced.
+ */
+class Execution {
+
+    private final Command command;
+
+    private final ExecutorListener listener;
+
+    private final long submittedAt = System.nanoTime();
+
+    private final AtomicBoolean outputSeen = new AtomicBoolean();
+
+    private final AtomicReference<Termination> termination = new AtomicReference<>();
+
+    private long spawnTime;
+
+    private Process process;
+
+    private CaptureOutputStream stdout;
+
+    private CaptureOutputStream stderr;
+
+    /**
+     * Create the state of a newly submitted execution.
+     *
+     * @param command  the command being executed
+     * @param listener the listener to notify
+     */
+    Execution(Command command, ExecutorListener listener) {
+        this.command = command;
+        this.listener = listener;
+    }
+
+    Command command() {
+        return command;
+    }
+
+    ExecutorListener listener() {
+        return listener;
+    }
+
+    Process process() {
+        return process;
+    }
+
+    /**
+     * Record that the program was spawned.
+     *
+     * @param process the spawned process
+     */
+    void spawned(Process process) {
+        this.spawnTime = System.nanoTime() - submittedAt;
+        this.process = process;
+        listener.onSpawned(command, process.pid(), Duration.ofNanos(spawnTime));
+    }
+
+    /**
+     * Decide how the execution ends. Only the first decision counts, so that an exit racing
+     * with a timeout is reported consistently.
+     *
+     * @param termination how the execution ends
+     * @return true if this decision was the first
+     */
+    boolean end(Termination termination) {
+        return this.termination.compareAndSet(null, termination);
+    }
+
+    /**
+     * Get how the execution ends.
+     *
+     * @return the termination, or null if not decided yet
+     */
+    Termination termination() {
+        return termination.get();
+    }
+
+    /**
+     * Record that the program wrote output, notifying the listener on the first output only.
+     *
+     * @param source the output stream written to
+     */
+    void firstOutput(OutputSource source) {
+        if (outputSeen.compareAndSet(false, true)) {
+            listener.onFirstOutput(command, source, Duration.ofNanos(System.nanoTime() - submittedAt));
+        }
+    }
+
+    /**
+     * Start capturing both output streams with the given settings.
+     *
+     * @param capture the capture settings
+     */
+    void capture(OutputCapture capture) {
+        this.stdout = new CaptureOutputStream(capture);
+        this.stderr = new CaptureOutputStream(capture);
+    }
+
+    CaptureOutputStream capture(OutputSource source) {
+        return source == OutputSource.STDOUT ? stdout : stderr;
+    }
+
+    /**
+     * Produce the result of an execution that ended, without notifying the listener.
+     * Captured output is included whatever the termination, as long as the output streams have ended.
+     *
+     * @param termination how the execution ended
+     * @param exitCode    the exit code of the program
+     * @return the execution result
+     */
+    ExecutionResult result(Termination termination, int exitCode) {
+        return new ExecutionResult(
+                exitCode,
+                termination,
+                process == null ? -1 : process.pid(),
+                Duration.ofNanos(spawnTime),
+                Duration.ofNanos(System.nanoTime() - submittedAt),
+                stdout != null ? stdout.detach() : null,
+                stderr != null ? stderr.detach() : null,
+                null
+        );
+    }
+
+    /**
+     * Produce the result of an execution that ended and notify the listener.
+     *
+     * @param termination how the execution ended
+     * @param exitCode    the exit code of the program
+     * @return the execution result
+     */
+    ExecutionResult complete(Termination termination, int exitCode) {
+        return notifyCompleted(result(termination, exitCode));
+    }
+
+    /**
+     * Produce the result of an execution whose program was never spawned and notify the listener.
+     *
+     * @param termination why the program was never spawned
+     * @param failure     the error that prevented spawning
+     * @return the execution result
+     */
+    ExecutionResult fail(Termination termination, Throwable failure) {
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - submittedAt);
+        return notifyCompleted(new ExecutionResult(-1, termination, -1, elapsed, elapsed, null, null, failure));
+    }
+
+    private ExecutionResult notifyCompleted(ExecutionResult result) {
+        listener.onCompleted(command, result);
+        return result;
+    }
+
+}
@@ -0,0 +1,374 @@
+package com.inspw.psexecj;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the results of fleet rollouts, kept in a memory-mapped file so that a rollout interrupted
+ * by a crash can be resumed with {@link FleetExecutor#resume} against the computers it has not completed yet.
+ *
+ * Each result is stored as a fixed-width record holding the hashes of the rollout ID and computer, the termination,
+ * exit code and timings, and a checksum. Records are forced to disk in batches once per commit interval, and a
+ * record torn by a crash fails its checksum and ends the journal when it is opened again. A computer only counts
+ * as completed once the record of its completion has been forced to disk.
+ */
+public class ExecutionJournal implements Closeable {
+
+    /**
+     * The size in bytes of a record.
+     */
+    static final int RECORD_SIZE = 64;
+
+    /**
+     * The size in bytes of the regions the file is mapped and grown in.
+     */
+    private static final int SEGMENT_SIZE = RECORD_SIZE * 16384;
+
+    private static final int CHECKSUM_OFFSET = RECORD_SIZE - 4;
+
+    private final FileChannel channel;
+
+    /**
+     * The time in milliseconds records are batched for before being forced to disk.
+     */
+    private final long commitInterval;
+
+    /**
+     * The hashes of the completed computers, keyed by the hash of their rollout ID.
+     */
+    private final Map<Long, Set<Long>> completed = new ConcurrentHashMap<>();
+
+    private MappedByteBuffer segment;
+
+    private long segmentStart;
+
+    /**
+     * The position of the next record in the file.
+     */
+    private long position;
+
+    /**
+     * The segments written since the last commit.
+     */
+    private List<MappedByteBuffer> dirty = new ArrayList<>();
+
+    /**
+     * The records written since the last commit.
+     */
+    private List<Uncommitted> uncommitted = new ArrayList<>();
+
+    private boolean commitScheduled;
+
+    private boolean closed;
+
+    /**
+     * Open the journal in the given file, committing records every 10 milliseconds.
+     *
+     * @param file the file of the journal, created if it does not exist
+     * @throws IOException if an I/O error occurs reading the file
+     */
+    public ExecutionJournal(Path file) throws IOException {
+        this(file, 10);
+    }
+
+    /**
+     * Open the journal in the given file, replaying the records it holds.
+     *
+     * @param file           the file of the journal, created if it does not exist
+     * @param commitInterval the time in milliseconds records are batched for before being forced to disk
+     * @throws IOException if an I/O error occurs reading the file
+     */
+    public ExecutionJournal(Path file, long commitInterval) throws IOException {
+        this.channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.commitInterval = commitInterval;
+
+        try {
+            replay();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Replay the valid records of the file, up to the first empty or torn record.
+     */
+    private void replay() throws IOException {
+        long size = channel.size();
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+
+        while (true) {
+            int offset = (int) (position - segmentStart);
+
+            if (offset == SEGMENT_SIZE) {
+                if (position >= size) {
+                    return;
+                }
+
+                segmentStart = position;
+                segment = channel.map(FileChannel.MapMode.READ_WRITE, segmentStart, SEGMENT_SIZE);
+                continue;
+            }
+
+            ByteBuffer record = segment.duplicate();
+            record.position(offset).limit(offset + RECORD_SIZE);
+            record = record.slice();
+
+            if (record.getInt(CHECKSUM_OFFSET) != checksum(record)) {
+                return;
+            }
+
+            if (record.get(44) == Termination.EXITED.ordinal() && isCompletion(record.getInt(40))) {
+                completed(record.getLong(0), record.getLong(8));
+            }
+
+            position += RECORD_SIZE;
+        }
+    }
+
+    /**
+     * Check whether the given computer completed the given rollout, by exiting with any exit code but -1,
+     * which is how PsExec reports a computer it could not reach. Computers whose execution timed out, failed to
+     * spawn, was rejected or was killed, that were unreachable or left unreported by their chunk, have not
+     * completed, and neither have computers whose record has not been forced to disk yet.
+     *
+     * @param rollout  the ID of the rollout
+     * @param computer the computer
+     * @return true if the computer completed the rollout
+     */
+    public boolean isCompleted(String rollout, String computer) {
+        Set<Long> computers = completed.get(hash(rollout));
+        return computers != null && computers.contains(hash(computer.toLowerCase(Locale.ROOT)));
+    }
+
+    /**
+     * Get the number of computers that completed the given rollout.
+     *
+     * @param rollout the ID of the rollout
+     * @return the number of completed computers
+     */
+    public int completed(String rollout) {
+        Set<Long> computers = completed.get(hash(rollout));
+        return computers != null ? computers.size() : 0;
+    }
+
+    /**
+     * Append the result of a computer to the journal.
+     *
+     * @param rollout  the ID of the rollout
+     * @param computer the computer
+     * @param result   the result of the computer
+     * @return the future completing once the record has been forced to disk, and the computer counts as completed
+     */
+    public CompletableFuture<Void> record(String rollout, String computer, ExecutionResult result) {
+        long rolloutHash = hash(rollout);
+        long computerHash = hash(computer.toLowerCase(Locale.ROOT));
+        CompletableFuture<Void> committed = new CompletableFuture<>();
+
+        synchronized (this) {
+            if (closed) {
+                return CompletableFuture.failedFuture(new IllegalStateException("Journal is closed"));
+            }
+
+            ByteBuffer record;
+
+            try {
+                record = next();
+            } catch (IOException | UncheckedIOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+
+            record.putLong(0, rolloutHash);
+            record.putLong(8, computerHash);
+            record.putLong(16, System.currentTimeMillis());
+            record.putLong(24, result.spawnTime().toNanos());
+            record.putLong(32, result.wallTime().toNanos());
+            record.putInt(40, result.exitCode());
+            record.put(44, (byte) result.termination().ordinal());
+            record.putInt(CHECKSUM_OFFSET, checksum(record));
+
+            uncommitted.add(new Uncommitted(committed, rolloutHash, computerHash,
+                    result.termination() == Termination.EXITED && isCompletion(result.exitCode())));
+
+            if (!commitScheduled) {
+                commitScheduled = true;
+                DeadlineScheduler.shared().schedule(this::commitQuietly, commitInterval, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        return committed;
+    }
+
+    /**
+     * Claim the slot of the next record, mapping the next segment of the file once the current one is full.
+     *
+     * @return the slot of the record
+     * @throws IOException if an I/O error occurs growing the file
+     */
+    private ByteBuffer next() throws IOException {
+        if (position - segmentStart == SEGMENT_SIZE) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, position, SEGMENT_SIZE);
+            segmentStart = position;
+        }
+
+        if (dirty.isEmpty() || dirty.get(dirty.size() - 1) != segment) {
+            dirty.add(segment);
+        }
+
+        ByteBuffer record = segment.duplicate();
+        int offset = (int) (position - segmentStart);
+        record.position(offset).limit(offset + RECORD_SIZE);
+        position += RECORD_SIZE;
+        return record.slice();
+    }
+
+    /**
+     * Force the records written so far to disk, completing their futures.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void commit() throws IOException {
+        List<MappedByteBuffer> segments;
+        List<Uncommitted> batch;
+
+        synchronized (this) {
+            segments = dirty;
+            batch = uncommitted;
+            dirty = new ArrayList<>();
+            uncommitted = new ArrayList<>();
+            commitScheduled = false;
+        }
+
+        try {
+            // Writers go on appending into the mapped segments while this batch is forced.
+            for (MappedByteBuffer written : segments) {
+                written.force();
+            }
+
+            channel.force(true);
+        } catch (IOException | UncheckedIOException e) {
+            batch.forEach(record -> record.committed.completeExceptionally(e));
+            throw e;
+        }
+
+        for (Uncommitted record : batch) {
+            if (record.completes) {
+                completed(record.rollout, record.computer);
+            }
+
+            record.committed.complete(null);
+        }
+    }
+
+    private void commitQuietly() {
+        try {
+            commit();
+        } catch (IOException | UncheckedIOException e) {
+            // The futures of the batch have failed with the error.
+        }
+    }
+
+    /**
+     * Commit the remaining records and close the file.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+        }
+
+        try {
+            commit();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static boolean isCompletion(int exitCode) {
+        return exitCode != -1;
+    }
+
+    private void completed(long rollout, long computer) {
+        completed.computeIfAbsent(rollout, key -> ConcurrentHashMap.newKeySet()).add(computer);
+    }
+
+    /**
+     * Compute the checksum of a record, over all of its bytes but the checksum itself.
+     *
+     * @param record the record
+     * @return the checksum
+     */
+    private static int checksum(ByteBuffer record) {
+        CRC32 crc = new CRC32();
+        ByteBuffer content = record.duplicate();
+        content.position(0).limit(CHECKSUM_OFFSET);
+        crc.update(content);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Hash a string into 64 bits with FNV-1a, so that records keep a fixed width whatever the length of the names.
+     *
+     * @param value the string to hash
+     * @return the hash
+     */
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+
+        return hash;
+    }
+
+    /**
+     * A record waiting to be forced to disk.
+     */
+    private static final class Uncommitted {
+
+        private final CompletableFuture<Void> committed;
+
+        private final long rollout;
+
+        private final long computer;
+
+        /**
+         * Whether the record completes its computer once it is forced to disk.
+         */
+        private final boolean completes;
+
+        private Uncommitted(CompletableFuture<Void> committed, long rollout, long computer, boolean completes) {
+            this.committed = committed;
+            this.rollout = rollout;
+            this.computer = computer;
+            this.completes = completes;
+        }
+
+    }
+
+}
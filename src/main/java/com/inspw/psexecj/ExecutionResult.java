@@ -0,0 +1,150 @@
+package com.inspw.psexecj;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+@Accessors(fluent = true)
+@Getter
+public class ExecutionResult {
+
+    /**
+     * The exit code of the program, or -1 if the program did not exit on its own.
+     */
+    private final int exitCode;
+
+    /**
+     * How the execution ended.
+     */
+    private final Termination termination;
+
+    /**
+     * The native process ID of the spawned program, or -1 if it was never spawned.
+     */
+    private final long pid;
+
+    /**
+     * The time taken to spawn the program.
+     */
+    private final Duration spawnTime;
+
+    /**
+     * The time from submitting the execution until it ended.
+     */
+    private final Duration wallTime;
+
+    /**
+     * The captured standard output of the program, or null if output capture is disabled
+     * or the output did not end with the program.
+     */
+    private final CapturedOutput stdout;
+
+    /**
+     * The captured standard error of the program, or null if output capture is disabled
+     * or the output did not end with the program.
+     */
+    private final CapturedOutput stderr;
+
+    /**
+     * The error that prevented the program from spawning, or null if it was spawned.
+     */
+    private final Throwable failure;
+
+    /**
+     * Create the result of an execution whose future failed instead of producing a result.
+     * Cancelled executions are reported as killed, anything else as failing to spawn.
+     *
+     * @param failure the error the future failed with
+     * @return the execution result
+     */
+    static ExecutionResult failed(Throwable failure) {
+        Termination termination = failure instanceof CancellationException
+                ? Termination.KILLED
+                : Termination.SPAWN_FAILED;
+        return new ExecutionResult(-1, termination, -1, Duration.ZERO, Duration.ZERO, null, null, failure);
+    }
+
+    /**
+     * Create the result of a computer as reported in the output of a multi-computer invocation.
+     * The result carries no process or output of its own.
+     *
+     * @param termination how the computer ended, exited or unreachable
+     * @param exitCode    the exit code, or -1 if the computer could not be reached
+     * @param wallTime    the time from the start of the invocation until the computer reported
+     * @return the execution result
+     */
+    static ExecutionResult reported(Termination termination, int exitCode, Duration wallTime) {
+        return new ExecutionResult(exitCode, termination, -1, Duration.ZERO, wallTime, null, null, null);
+    }
+
+    /**
+     * Create the result of an execution rejected before its program was spawned.
+     *
+     * @param reason the reason of the rejection
+     * @return the execution result
+     */
+    static ExecutionResult rejected(String reason) {
+        return new ExecutionResult(-1, Termination.REJECTED, -1, Duration.ZERO, Duration.ZERO, null, null,
+                new RejectedExecutionException(reason));
+    }
+
+    /**
+     * Copy this result with captured output of its own, so that closing the output of the copy does not affect
+     * the output of this result.
+     *
+     * @return the copy, or this result if it has no captured output
+     * @throws IOException if an I/O error occurs copying the output
+     */
+    ExecutionResult copy() throws IOException {
+        if (stdout == null && stderr == null) {
+            return this;
+        }
+
+        CapturedOutput stdoutCopy = stdout == null ? null : stdout.copy();
+        CapturedOutput stderrCopy;
+
+        try {
+            stderrCopy = stderr == null ? null : stderr.copy();
+        } catch (IOException e) {
+            if (stdoutCopy != null) {
+                stdoutCopy.close();
+            }
+
+            throw e;
+        }
+
+        return new ExecutionResult(exitCode, termination, pid, spawnTime, wallTime, stdoutCopy, stderrCopy, failure);
+    }
+
+    /**
+     * Release the captured output of a result that is dropped instead of being handed out.
+     */
+    void release() {
+        for (CapturedOutput output : new CapturedOutput[]{stdout, stderr}) {
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    // The spill file is left behind in the temporary directory.
+                }
+            }
+        }
+    }
+
+    /**
+     * Check whether the program exited on its own with an exit code of 0.
+     *
+     * @return true if the execution succeeded
+     */
+    public boolean succeeded() {
+        return termination == Termination.EXITED && exitCode == 0;
+    }
+
+}
@@ -7,9 +7,9 @@ public interface Executor {
     /**
      * Execute the given PsExec command with its argument.
      * @param command the command to execute
-     * @return the exit code of the program
+     * @return the result of the execution
      * @throws IOException if an I/O error occurs
      */
-    int execute(Command command) throws IOException;
+    ExecutionResult execute(Command command) throws IOException;
 
 }
@@ -0,0 +1,63 @@
+package com.inspw.psexecj;
+
+import java.time.Duration;
+
+/**
+ * Receives events about executions. Events are delivered on the threads driving the executions,
+ * so implementations must be thread-safe, fast and must not throw.
+ */
+public interface ExecutorListener {
+
+    /**
+     * Listener ignoring all events.
+     */
+    ExecutorListener NONE = new ExecutorListener() {
+    };
+
+    /**
+     * Called when an execution is submitted, before its program is spawned.
+     *
+     * @param command the command being executed
+     */
+    default void onQueued(Command command) {
+    }
+
+    /**
+     * Called once the program of an execution was spawned.
+     *
+     * @param command   the command being executed
+     * @param pid       the native process ID of the program
+     * @param spawnTime the time taken to spawn the program
+     */
+    default void onSpawned(Command command, long pid, Duration spawnTime) {
+    }
+
+    /**
+     * Called when the program of an execution first writes output.
+     * Only reported when the output is piped into the JVM by an output sink or output capture.
+     *
+     * @param command the command being executed
+     * @param source  the output stream written to first
+     * @param elapsed the time from submitting the execution until the first output
+     */
+    default void onFirstOutput(Command command, OutputSource source, Duration elapsed) {
+    }
+
+    /**
+     * Called when an execution reached its timeout, before its program is killed.
+     *
+     * @param command the command being executed
+     */
+    default void onTimedOut(Command command) {
+    }
+
+    /**
+     * Called once an execution produced its result.
+     *
+     * @param command the command that was executed
+     * @param result  the result of the execution
+     */
+    default void onCompleted(Command command, ExecutionResult result) {
+    }
+
+}
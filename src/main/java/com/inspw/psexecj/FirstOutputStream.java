@@ -0,0 +1,50 @@
+package com.inspw.psexecj;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Stream notifying the execution once, on the first bytes written to any of its output streams.
+ */
+class FirstOutputStream extends FilterOutputStream {
+
+    private final Execution execution;
+
+    private final OutputSource source;
+
+    private boolean written;
+
+    /**
+     * Create a notifying stream.
+     *
+     * @param out       the stream to write to
+     * @param execution the execution to notify
+     * @param source    the output stream being written
+     */
+    FirstOutputStream(OutputStream out, Execution execution, OutputSource source) {
+        super(out);
+        this.execution = execution;
+        this.source = source;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        notifyFirstOutput();
+        out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        notifyFirstOutput();
+        out.write(b, off, len);
+    }
+
+    private void notifyFirstOutput() {
+        if (!written) {
+            written = true;
+            execution.firstOutput(source);
+        }
+    }
+
+}
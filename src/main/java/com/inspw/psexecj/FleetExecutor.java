@@ -0,0 +1,646 @@
+package com.inspw.psexecj;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Fans a command targeting many computers out into one execution per computer,
+ * running at most a fixed number of them at the same time.
+ * With a chunk size set, computers are instead written in chunks into temporary computer list files,
+ * and each chunk is executed by a single PsExec process whose status output is parsed for the result
+ * of each computer.
+ * Computers of a chunk that exited without printing their outcome end as {@link Termination#UNREPORTED}.
+ */
+@Getter
+public class FleetExecutor {
+
+    private static final ExecutorService CALLBACKS = Executors.newCachedThreadPool(
+            CompletionPool.daemonThreadFactory("psexecj-fleet-"));
+
+    /**
+     * The executor running the execution of each computer.
+     */
+    private final AsyncExecutor executor;
+
+    /**
+     * The maximum number of executions running at the same time.
+     */
+    private final int parallelism;
+
+    /**
+     * The number of computers executed by a single PsExec process through a temporary computer list file.
+     * Each computer receives the exit code PsExec prints for it. Computers it printed nothing for end as
+     * {@link Termination#UNREPORTED} if the chunk exited, or with the result of the chunk otherwise.
+     * Chunks cannot run through an executor redirecting the output into files, which leaves nothing to parse.
+     * Set to 0 to run one execution per computer.
+     */
+    @Setter
+    private int chunkSize;
+
+    /**
+     * The directory to write the temporary computer list files into.
+     * Set to null to use the default temporary directory.
+     */
+    @Setter
+    private File chunkDirectory;
+
+    /**
+     * The executor calling the listeners and subscribers, and dispatching the next computers as executions complete.
+     * Defaults to a pool shared by fleet executors, separate from the pool completing executions and firing
+     * timeouts, so that a slow listener never delays the executions of other callers.
+     */
+    @Setter
+    private Executor callbackExecutor = CALLBACKS;
+
+    /**
+     * Create a fleet executor.
+     *
+     * @param executor    the executor running the execution of each computer
+     * @param parallelism the maximum number of executions running at the same time
+     */
+    public FleetExecutor(AsyncExecutor executor, int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Execute the given command against each of its computers separately.
+     *
+     * @param command the command to execute
+     * @return the future result of each computer, keyed by computer
+     */
+    public CompletableFuture<Map<String, ExecutionResult>> submit(Command command) {
+        return submit(command, (computer, result) -> {
+        });
+    }
+
+    /**
+     * Execute the given command against each of its computers separately,
+     * reporting the result of each computer as soon as it finishes.
+     *
+     * Cancelling the returned future stops dispatching and cancels the running executions.
+     *
+     * @param command  the command to execute
+     * @param listener the listener receiving each computer and its result, called concurrently on the
+     *                 callback executor
+     * @return the future result of each computer, keyed by computer
+     * @throws IllegalStateException if chunks would run through an executor redirecting the output into files
+     */
+    public CompletableFuture<Map<String, ExecutionResult>> submit(Command command,
+                                                                  BiConsumer<String, ExecutionResult> listener) {
+        checkChunking();
+        Run run = new Run(command, command.targets().iterator(), listener, true, getCallbackExecutor());
+        run.request(Long.MAX_VALUE);
+        return run.done;
+    }
+
+    /**
+     * Execute the given command as a rollout recorded in a journal, against each of its computers that has not
+     * completed the rollout yet according to the journal. Starting a rollout is resuming it with no computer
+     * completed, so the same call restarts a rollout interrupted by a crash with only its remaining computers.
+     *
+     * The result of each computer is reported to the listener once its record has been forced to disk, and the
+     * returned future only completes once the records of all dispatched computers have been. If the journal fails
+     * to record a result, the computer is not reported and the returned future fails with the error.
+     *
+     * @param rollout  the ID of the rollout
+     * @param journal  the journal recording the results of the rollout
+     * @param command  the command to execute
+     * @param listener the listener receiving each computer and its result, called concurrently on the
+     *                 callback executor
+     * @return the future result of each computer dispatched by this call, keyed by computer
+     * @throws IllegalStateException if chunks would run through an executor redirecting the output into files
+     */
+    public CompletableFuture<Map<String, ExecutionResult>> resume(String rollout, ExecutionJournal journal,
+                                                                  Command command,
+                                                                  BiConsumer<String, ExecutionResult> listener) {
+        checkChunking();
+        Iterator<String> remaining = command.targets(computer -> !journal.isCompleted(rollout, computer));
+        // The number of records not forced to disk yet, plus one until all computers have completed.
+        AtomicInteger uncommitted = new AtomicInteger(1);
+        CompletableFuture<Void> committed = new CompletableFuture<>();
+        Executor callbacks = getCallbackExecutor();
+        Run run = new Run(command, remaining, (computer, result) -> {
+            uncommitted.incrementAndGet();
+            // Reporting on the callback executor keeps a slow listener from holding up the commits of the journal.
+            journal.record(rollout, computer, result).whenCompleteAsync((v, e) -> {
+                if (e != null) {
+                    committed.completeExceptionally(e);
+                } else {
+                    try {
+                        listener.accept(computer, result);
+                    } catch (RuntimeException listenerFailure) {
+                        // A failing listener must not keep the remaining computers from being reported.
+                    }
+                }
+
+                if (uncommitted.decrementAndGet() == 0) {
+                    committed.complete(null);
+                }
+            }, callbacks);
+        }, true, callbacks);
+
+        CompletableFuture<Map<String, ExecutionResult>> done = new CompletableFuture<>();
+        done.whenComplete((r, e) -> {
+            if (done.isCancelled()) {
+                run.done.cancel(true);
+            }
+        });
+        run.done.whenComplete((results, e) -> {
+            if (e != null) {
+                done.completeExceptionally(e);
+                return;
+            }
+
+            if (uncommitted.decrementAndGet() == 0) {
+                committed.complete(null);
+            }
+
+            committed.whenComplete((v, commitFailure) -> {
+                if (commitFailure != null) {
+                    done.completeExceptionally(commitFailure);
+                } else {
+                    done.complete(results);
+                }
+            });
+        });
+        run.request(Long.MAX_VALUE);
+        return done;
+    }
+
+    /**
+     * Publish the results of executing the given command against each of its computers separately.
+     * Each subscription runs the command again. Computers are only dispatched once the subscriber has requested
+     * their results, so a slow subscriber slows down the dispatching instead of buffering results.
+     *
+     * Cancelling the subscription stops dispatching and cancels the running executions.
+     * The subscriber is signalled on the callback executor.
+     *
+     * @param command the command to execute
+     * @return the publisher of each computer and its result, in order of completion
+     * @throws IllegalStateException if chunks would run through an executor redirecting the output into files
+     */
+    public Flow.Publisher<Map.Entry<String, ExecutionResult>> publish(Command command) {
+        return publish(command, getCallbackExecutor());
+    }
+
+    /**
+     * Publish the results of executing the given command against each of its computers separately,
+     * signalling the subscriber on the given executor. Signals are never delivered concurrently.
+     *
+     * @param command  the command to execute
+     * @param executor the executor signalling the subscriber and dispatching the next computers
+     * @return the publisher of each computer and its result, in order of completion
+     * @throws IllegalStateException if chunks would run through an executor redirecting the output into files
+     * @see #publish(Command)
+     */
+    public Flow.Publisher<Map.Entry<String, ExecutionResult>> publish(Command command, Executor executor) {
+        checkChunking();
+        return subscriber -> new Publication(command, subscriber, executor).start();
+    }
+
+    /**
+     * Reject running in chunks through an executor writing the output of PsExec into files instead of the
+     * output sink of the command, as every computer would then end as {@link Termination#UNREPORTED}.
+     */
+    private void checkChunking() {
+        if (chunkSize > 0 && executor instanceof ProcessExecutor
+                && ((ProcessExecutor) executor).getOutputRedirect() != null) {
+            throw new IllegalStateException("Chunks are reported from the output of PsExec, "
+                    + "which the output redirect of the executor writes into files");
+        }
+    }
+
+    /**
+     * The dispatching state of one fleet execution.
+     */
+    private class Run {
+
+        private final Command command;
+
+        private final Iterator<String> computers;
+
+        private final BiConsumer<String, ExecutionResult> listener;
+
+        /**
+         * The executor calling the listener and dispatching the next computers.
+         */
+        private final Executor callbacks;
+
+        /**
+         * The result of each computer, or null if the results are only reported to the listener.
+         */
+        private final Map<String, ExecutionResult> results;
+
+        private final Set<CompletableFuture<ExecutionResult>> pending = ConcurrentHashMap.newKeySet();
+
+        /**
+         * The number of running executions, plus one until all computers have been dispatched.
+         */
+        private final AtomicInteger running = new AtomicInteger(1);
+
+        /**
+         * The number of computers that may still be dispatched before more are requested.
+         * Guarded by the computers iterator.
+         */
+        private long demand;
+
+        /**
+         * The number of dispatched executions that have not completed yet. Guarded by the computers iterator.
+         */
+        private int dispatched;
+
+        /**
+         * Whether all computers have been dispatched. Guarded by the computers iterator.
+         */
+        private boolean exhausted;
+
+        private final CompletableFuture<Map<String, ExecutionResult>> done = new CompletableFuture<>();
+
+        private Run(Command command, Iterator<String> computers, BiConsumer<String, ExecutionResult> listener,
+                    boolean keepResults, Executor callbacks) {
+            this.command = command;
+            this.computers = computers;
+            this.listener = listener;
+            this.callbacks = callbacks;
+            this.results = keepResults ? new ConcurrentHashMap<>() : null;
+
+            done.whenComplete((r, e) -> {
+                if (done.isCancelled()) {
+                    pending.forEach(future -> future.cancel(true));
+
+                    synchronized (computers) {
+                        close();
+                    }
+                }
+            });
+        }
+
+        /**
+         * Stop expanding the host sets of the command, such as a host file still being read.
+         * Guarded by the computers iterator.
+         */
+        private void close() {
+            if (computers instanceof Closeable) {
+                try {
+                    ((Closeable) computers).close();
+                } catch (IOException | UncheckedIOException e) {
+                    // The remaining computers are not dispatched anyway.
+                }
+            }
+        }
+
+        /**
+         * Allow the given number of additional computers to be dispatched, and dispatch them up to the parallelism.
+         *
+         * @param n the number of computers
+         */
+        private void request(long n) {
+            synchronized (computers) {
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            }
+
+            while (dispatchNext()) {
+                // Fill up to the parallelism limit or the demand.
+            }
+        }
+
+        /**
+         * Dispatch the execution of the next computer or chunk of computers, if any and if allowed by
+         * the parallelism and the demand.
+         *
+         * @return true if an execution was dispatched
+         */
+        private boolean dispatchNext() {
+            List<String> targets;
+
+            synchronized (computers) {
+                if (exhausted) {
+                    return false;
+                }
+
+                if (done.isDone() || !computers.hasNext()) {
+                    exhausted = true;
+                    targets = null;
+                    close();
+                } else if (dispatched >= parallelism || demand == 0) {
+                    return false;
+                } else if (chunkSize <= 0) {
+                    targets = Collections.singletonList(computers.next());
+                } else {
+                    int limit = (int) Math.min(chunkSize, demand);
+                    targets = new ArrayList<>(limit);
+
+                    while (targets.size() < limit && computers.hasNext()) {
+                        targets.add(computers.next());
+                    }
+                }
+
+                if (targets != null) {
+                    // Counted before the lock is released, so that no completion sees the run as finished.
+                    running.incrementAndGet();
+                    dispatched++;
+
+                    if (demand != Long.MAX_VALUE) {
+                        demand -= targets.size();
+                    }
+                }
+            }
+
+            if (targets == null) {
+                finish();
+                return false;
+            }
+
+            // The computers of the execution that have not reported their result yet, keyed in lower case.
+            Map<String, String> unreported = new ConcurrentHashMap<>();
+            targets.forEach(computer -> unreported.put(computer.toLowerCase(Locale.ROOT), computer));
+
+            CompletableFuture<ExecutionResult> result;
+
+            try {
+                result = chunkSize <= 0
+                        ? executor.submit(command, targets.get(0))
+                        : submitChunk(targets, unreported);
+            } catch (RuntimeException e) {
+                result = CompletableFuture.failedFuture(e);
+            }
+
+            CompletableFuture<ExecutionResult> execution = result;
+            pending.add(execution);
+
+            if (done.isCancelled()) {
+                execution.cancel(true);
+            }
+
+            // Completing asynchronously keeps synchronous failures from recursing through the remaining computers.
+            execution.whenCompleteAsync((r, e) -> {
+                pending.remove(execution);
+                completed(unreported, r, e);
+            }, callbacks);
+            return true;
+        }
+
+        /**
+         * Execute the command once against a chunk of computers through a temporary computer list file,
+         * deleting the file once the execution completes. The outcome of each computer is parsed from the
+         * status PsExec prints on its error output and reported as soon as it is printed.
+         *
+         * @param chunk      the computers of the chunk
+         * @param unreported the computers of the chunk that have not reported their result yet
+         * @return the future result of the execution
+         */
+        private CompletableFuture<ExecutionResult> submitChunk(List<String> chunk, Map<String, String> unreported) {
+            Path file;
+
+            try {
+                file = chunkDirectory != null
+                        ? Files.createTempFile(chunkDirectory.toPath(), "psexecj-", ".txt")
+                        : Files.createTempFile("psexecj-", ".txt");
+                Files.write(file, chunk, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                return CompletableFuture.completedFuture(ExecutionResult.failed(e));
+            }
+
+            long startedAt = System.nanoTime();
+            OutputSink hostExits = OutputSink.hostExits((c, computer, termination, exitCode) -> {
+                String target = unreported.remove(computer.toLowerCase(Locale.ROOT));
+
+                if (target != null) {
+                    ExecutionResult result = ExecutionResult.reported(termination, exitCode,
+                            Duration.ofNanos(System.nanoTime() - startedAt));
+                    // Reported off the thread draining the output, and counted as running until reported.
+                    running.incrementAndGet();
+                    callbacks.execute(() -> {
+                        try {
+                            report(target, result);
+                        } finally {
+                            finish();
+                        }
+                    });
+                }
+            });
+            CompletableFuture<ExecutionResult> execution;
+
+            try {
+                execution = executor.submit(command.withComputerListFile(file.toFile(),
+                        OutputSink.both(command.outputSink(), hostExits)), null);
+            } catch (RuntimeException e) {
+                delete(file);
+                throw e;
+            }
+
+            execution.whenComplete((r, e) -> delete(file));
+            return execution;
+        }
+
+        private void delete(Path file) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                file.toFile().deleteOnExit();
+            }
+        }
+
+        private void completed(Map<String, String> unreported, ExecutionResult result, Throwable failure) {
+            if (failure != null) {
+                result = ExecutionResult.failed(failure instanceof CompletionException ? failure.getCause() : failure);
+            }
+
+            if (chunkSize > 0 && result.termination() == Termination.EXITED) {
+                // The exit code of a chunk says nothing about the computers it did not report.
+                result = ExecutionResult.reported(Termination.UNREPORTED, -1, result.wallTime());
+            }
+
+            try {
+                for (String key : unreported.keySet()) {
+                    String computer = unreported.remove(key);
+
+                    if (computer != null) {
+                        report(computer, result);
+                    }
+                }
+            } finally {
+                synchronized (computers) {
+                    dispatched--;
+                }
+
+                dispatchNext();
+                finish();
+            }
+        }
+
+        private void report(String computer, ExecutionResult result) {
+            if (results != null) {
+                results.put(computer, result);
+            }
+
+            try {
+                listener.accept(computer, result);
+            } catch (RuntimeException e) {
+                // A failing listener must not keep the remaining computers from being reported.
+            }
+        }
+
+        private void finish() {
+            if (running.decrementAndGet() == 0) {
+                done.complete(results != null ? Collections.unmodifiableMap(results) : Collections.emptyMap());
+            }
+        }
+
+    }
+
+    /**
+     * The subscription to the results of one fleet execution, delivering them serially to its subscriber.
+     */
+    private class Publication implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super Map.Entry<String, ExecutionResult>> subscriber;
+
+        private final Run run;
+
+        /**
+         * The results reported but not delivered yet, bounded by the requested results.
+         */
+        private final Queue<Map.Entry<String, ExecutionResult>> queue = new ConcurrentLinkedQueue<>();
+
+        /**
+         * The number of pending calls to drain, so that only one of them delivers at a time.
+         */
+        private final AtomicInteger wip = new AtomicInteger();
+
+        private final Executor executor;
+
+        private volatile boolean cancelled;
+
+        /**
+         * The error to signal to the subscriber, delivered by drain like every other signal.
+         */
+        private volatile Throwable error;
+
+        /**
+         * Whether the subscriber received its terminal signal. Only accessed by drain.
+         */
+        private boolean terminated;
+
+        private Publication(Command command, Flow.Subscriber<? super Map.Entry<String, ExecutionResult>> subscriber,
+                            Executor executor) {
+            this.subscriber = subscriber;
+            this.executor = executor;
+            this.run = new Run(command, command.targets().iterator(), (computer, result) -> {
+                queue.add(new AbstractMap.SimpleImmutableEntry<>(computer, result));
+                drain();
+            }, false, executor);
+        }
+
+        private void start() {
+            subscriber.onSubscribe(this);
+            run.done.whenComplete((r, e) -> drain());
+            run.request(0);
+        }
+
+        @Override
+        public void request(long n) {
+            if (cancelled) {
+                return;
+            }
+
+            if (n <= 0) {
+                error = new IllegalArgumentException("Requested " + n + " results, must be positive");
+                run.done.cancel(true);
+                drain();
+                return;
+            }
+
+            run.request(n);
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            run.done.cancel(true);
+            queue.clear();
+        }
+
+        /**
+         * Schedule the delivery of the pending signals on the executor, unless a delivery is already pending.
+         */
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+
+            try {
+                executor.execute(this::deliver);
+            } catch (RejectedExecutionException e) {
+                deliver();
+            }
+        }
+
+        /**
+         * Deliver the queued results, then complete the subscriber once the execution is done, or signal the
+         * pending error instead.
+         */
+        private void deliver() {
+            do {
+                if (terminated) {
+                    queue.clear();
+                } else if (error != null) {
+                    terminated = true;
+                    queue.clear();
+                    subscriber.onError(error);
+                } else {
+                    Map.Entry<String, ExecutionResult> next;
+
+                    while (!cancelled && (next = queue.poll()) != null) {
+                        try {
+                            subscriber.onNext(next);
+                        } catch (RuntimeException e) {
+                            cancel();
+                        }
+                    }
+
+                    if (!cancelled && run.done.isDone() && queue.isEmpty()) {
+                        terminated = true;
+                        subscriber.onComplete();
+                    }
+                }
+            } while (wip.decrementAndGet() != 0);
+        }
+
+    }
+
+}
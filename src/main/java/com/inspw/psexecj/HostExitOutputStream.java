@@ -0,0 +1,170 @@
+package com.inspw.psexecj;
+
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Stream scanning the output of a multi-computer PsExec invocation for the outcome of each computer.
+ * Lines are matched as bytes in a fixed size buffer, so only the computer names of matching lines are decoded.
+ * Lines longer than the buffer are skipped.
+ */
+class HostExitOutputStream extends OutputStream {
+
+    private static final byte[] EXITED_ON = ascii(" exited on ");
+
+    private static final byte[] WITH_ERROR_CODE = ascii(" with error code ");
+
+    private static final byte[] COULD_NOT_ACCESS = ascii("Couldn't access ");
+
+    private final Command command;
+
+    private final OutputSink.HostExitListener listener;
+
+    private final Charset charset;
+
+    private final byte[] line;
+
+    private int length;
+
+    private boolean overflow;
+
+    /**
+     * Create a multi-computer output scanning stream.
+     *
+     * @param command       the command being executed
+     * @param listener      the listener to receive the outcome of each computer
+     * @param charset       the charset to decode the computer names with
+     * @param maxLineLength the line buffer size in bytes
+     */
+    HostExitOutputStream(Command command, OutputSink.HostExitListener listener, Charset charset, int maxLineLength) {
+        this.command = command;
+        this.listener = listener;
+        this.charset = charset;
+        this.line = new byte[maxLineLength];
+    }
+
+    @Override
+    public void write(int b) {
+        if (b == '\n' || b == '\r') {
+            if (!overflow) {
+                scan();
+            }
+
+            length = 0;
+            overflow = false;
+        } else if (length < line.length) {
+            line[length++] = (byte) b;
+        } else {
+            overflow = true;
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        int end = off + len;
+
+        for (int i = off; i < end; i++) {
+            write(b[i]);
+        }
+    }
+
+    @Override
+    public void close() {
+        write('\n');
+    }
+
+    /**
+     * Match the buffered line against the lines PsExec prints when a computer finished or could not be reached:
+     * "cmd exited on HOST with error code N." and "Couldn't access HOST:".
+     */
+    private void scan() {
+        if (length == 0) {
+            return;
+        }
+
+        if (startsWith(COULD_NOT_ACCESS)) {
+            int end = length;
+
+            while (end > COULD_NOT_ACCESS.length && line[end - 1] != ':') {
+                end--;
+            }
+
+            if (end > COULD_NOT_ACCESS.length + 1) {
+                listener.ended(command, decode(COULD_NOT_ACCESS.length, end - 1), Termination.UNREACHABLE, -1);
+            }
+
+            return;
+        }
+
+        int host = indexOf(EXITED_ON, 0);
+
+        if (host < 0) {
+            return;
+        }
+
+        host += EXITED_ON.length;
+        int hostEnd = indexOf(WITH_ERROR_CODE, host);
+
+        if (hostEnd <= host) {
+            return;
+        }
+
+        int i = hostEnd + WITH_ERROR_CODE.length;
+        boolean negative = i < length && line[i] == '-';
+
+        if (negative) {
+            i++;
+        }
+
+        int start = i;
+        long exitCode = 0;
+
+        while (i < length && line[i] >= '0' && line[i] <= '9' && i - start < 10) {
+            exitCode = exitCode * 10 + (line[i++] - '0');
+        }
+
+        if (i > start) {
+            listener.ended(command, decode(host, hostEnd), Termination.EXITED,
+                    (int) (negative ? -exitCode : exitCode));
+        }
+    }
+
+    private boolean startsWith(byte[] prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length; i++) {
+            if (line[i] != prefix[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private int indexOf(byte[] pattern, int from) {
+        outer:
+        for (int i = from, last = length - pattern.length; i <= last; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (line[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+
+            return i;
+        }
+
+        return -1;
+    }
+
+    private String decode(int from, int to) {
+        return new String(line, from, to - from, charset);
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+}
@@ -0,0 +1,145 @@
+package com.inspw.psexecj;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The recent health of a single host, with the state of its circuit breaker.
+ */
+public class HostHealth {
+
+    /**
+     * The state of the circuit breaker of a host.
+     */
+    public enum State {
+
+        /**
+         * Executions against the host are let through.
+         */
+        CLOSED,
+
+        /**
+         * Executions against the host are rejected without contacting it.
+         */
+        OPEN,
+
+        /**
+         * A single probe execution against the host is in flight.
+         */
+        HALF_OPEN
+
+    }
+
+    private final String host;
+
+    private State state = State.CLOSED;
+
+    private int consecutiveFailures;
+
+    private long openedAt;
+
+    private long latencyNanos = -1;
+
+    private volatile long lastAccess;
+
+    HostHealth(String host, long now) {
+        this.host = host;
+        this.lastAccess = now;
+    }
+
+    /**
+     * Get the host.
+     *
+     * @return the host
+     */
+    public String host() {
+        return host;
+    }
+
+    /**
+     * Get the state of the circuit breaker.
+     *
+     * @return the state
+     */
+    public synchronized State state() {
+        return state;
+    }
+
+    /**
+     * Get the number of failures since the last success.
+     *
+     * @return the number of consecutive failures
+     */
+    public synchronized int consecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * Get the moving average of the wall time of the executions against the host.
+     *
+     * @return the average latency, or null if no execution completed yet
+     */
+    public synchronized Duration latency() {
+        return latencyNanos < 0 ? null : Duration.ofNanos(latencyNanos);
+    }
+
+    long lastAccess() {
+        return lastAccess;
+    }
+
+    /**
+     * Check whether an execution against the host may start, moving an open circuit to half-open
+     * once it has been open for the given duration.
+     *
+     * @param now          the current time in nanoseconds
+     * @param openDuration the time in milliseconds a circuit stays open
+     * @return true if the execution may start
+     */
+    synchronized boolean tryAcquire(long now, long openDuration) {
+        lastAccess = now;
+
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (now - openedAt >= TimeUnit.MILLISECONDS.toNanos(openDuration)) {
+                    state = State.HALF_OPEN;
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Record the outcome of an execution against the host.
+     *
+     * @param now       the current time in nanoseconds
+     * @param failed    whether the execution failed
+     * @param wallTime  the wall time of the execution in nanoseconds
+     * @param threshold the number of consecutive failures that opens the circuit
+     */
+    synchronized void record(long now, boolean failed, long wallTime, int threshold) {
+        lastAccess = now;
+        latencyNanos = latencyNanos < 0 ? wallTime : latencyNanos + (wallTime - latencyNanos) / 8;
+
+        if (!failed) {
+            consecutiveFailures = 0;
+            state = State.CLOSED;
+        } else if (++consecutiveFailures >= threshold || state == State.HALF_OPEN) {
+            state = State.OPEN;
+            openedAt = now;
+        }
+    }
+
+    /**
+     * Give back a probe that ended without an outcome, such as a cancelled execution.
+     */
+    synchronized void release() {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+        }
+    }
+
+}
@@ -0,0 +1,112 @@
+package com.inspw.psexecj;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A concurrent cache of the health of hosts. Hosts not contacted within the time to live are
+ * forgotten, and the least recently contacted hosts are evicted once the cache is full.
+ */
+public class HostHealthCache {
+
+    private final ConcurrentHashMap<String, HostHealth> hosts = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private final long ttl;
+
+    private final int capacity;
+
+    /**
+     * Create a host health cache.
+     *
+     * @param ttl      the time in milliseconds after which the health of a host is forgotten
+     * @param capacity the maximum number of hosts
+     */
+    public HostHealthCache(long ttl, int capacity) {
+        this.ttl = TimeUnit.MILLISECONDS.toNanos(ttl);
+        this.capacity = capacity;
+    }
+
+    /**
+     * Get the health of the given host, if it is known.
+     *
+     * @param host the host
+     * @return the health, or null if the host is not known
+     */
+    public HostHealth get(String host) {
+        HostHealth health = hosts.get(host);
+        return health == null || isExpired(health, System.nanoTime()) ? null : health;
+    }
+
+    /**
+     * Get the number of known hosts.
+     *
+     * @return the number of hosts
+     */
+    public int size() {
+        return hosts.size();
+    }
+
+    /**
+     * Get the health of the given host, starting to track it if it is not known.
+     *
+     * @param host the host
+     * @param now  the current time in nanoseconds
+     * @return the health
+     */
+    HostHealth track(String host, long now) {
+        HostHealth health = hosts.get(host);
+
+        if (health != null && !isExpired(health, now)) {
+            return health;
+        }
+
+        if (health != null) {
+            hosts.remove(host, health);
+        }
+
+        health = hosts.computeIfAbsent(host, key -> new HostHealth(key, now));
+
+        if (hosts.size() > capacity) {
+            evict(now);
+        }
+
+        return health;
+    }
+
+    private boolean isExpired(HostHealth health, long now) {
+        return now - health.lastAccess() > ttl;
+    }
+
+    /**
+     * Forget expired hosts, then the least recently contacted hosts until the cache is a quarter below capacity.
+     * Eviction happens in batches so that a full cache does not scan its hosts on every new host.
+     *
+     * @param now the current time in nanoseconds
+     */
+    private void evict(long now) {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            hosts.values().removeIf(health -> isExpired(health, now));
+            int excess = hosts.size() - capacity * 3 / 4;
+
+            if (excess > 0) {
+                hosts.entrySet().stream()
+                        .sorted(Comparator.comparingLong(entry -> entry.getValue().lastAccess() - now))
+                        .limit(excess)
+                        .map(Map.Entry::getKey)
+                        .forEach(hosts::remove);
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+}
@@ -0,0 +1,293 @@
+package com.inspw.psexecj;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * A set of hosts expanded lazily while it is iterated, so that the memory it takes does not depend on its size.
+ * Ranges are stored as their bounds, and files are read again on each iteration.
+ */
+public abstract class HostSet implements Iterable<String> {
+
+    /**
+     * Get the number of hosts in this set, if known without iterating it.
+     *
+     * @return the number of hosts, or -1 if unknown
+     */
+    public long size() {
+        return -1;
+    }
+
+    /**
+     * Create the set of the hosts of an IPv4 subnet in CIDR notation, such as "10.1.0.0/16".
+     * The network and broadcast addresses are left out of subnets with a prefix length of 30 or less.
+     *
+     * @param cidr the subnet
+     * @return the host set
+     */
+    public static HostSet cidr(String cidr) {
+        int slash = cidr.indexOf('/');
+        long address = Ipv4.parse(slash < 0 ? cidr : cidr.substring(0, slash));
+        int prefixLength;
+
+        try {
+            prefixLength = slash < 0 ? 32 : Integer.parseInt(cidr.substring(slash + 1));
+        } catch (NumberFormatException e) {
+            prefixLength = -1;
+        }
+
+        if (address < 0 || prefixLength < 0 || prefixLength > 32) {
+            throw new IllegalArgumentException("Invalid CIDR subnet: " + cidr);
+        }
+
+        long mask = prefixLength == 0 ? 0 : 0xFFFFFFFFL << (32 - prefixLength) & 0xFFFFFFFFL;
+        long first = address & mask;
+        long last = first | ~mask & 0xFFFFFFFFL;
+
+        if (prefixLength <= 30) {
+            first++;
+            last--;
+        }
+
+        return new Ipv4Range(first, last, cidr);
+    }
+
+    /**
+     * Create the set of the IPv4 addresses between two addresses, both included.
+     *
+     * @param first the first address
+     * @param last  the last address
+     * @return the host set
+     */
+    public static HostSet range(String first, String last) {
+        long from = Ipv4.parse(first);
+        long to = Ipv4.parse(last);
+
+        if (from < 0 || to < 0) {
+            throw new IllegalArgumentException("Invalid IPv4 range: " + first + "-" + last);
+        }
+
+        return new Ipv4Range(from, to, first + "-" + last);
+    }
+
+    /**
+     * Create the set of numbered host names, such as "web%03d" from 1 to 500 for "web001" to "web500".
+     *
+     * @param format the {@link String#format(String, Object...)} format of the host names, taking the number
+     * @param from   the first number
+     * @param to     the last number, included
+     * @return the host set
+     */
+    public static HostSet numbered(String format, long from, long to) {
+        Objects.requireNonNull(format);
+        return new HostSet() {
+            @Override
+            public long size() {
+                return Math.max(0, to - from + 1);
+            }
+
+            @Override
+            public Iterator<String> iterator() {
+                return new RangeIterator(from, to) {
+                    @Override
+                    String host(long number) {
+                        return String.format(format, number);
+                    }
+                };
+            }
+
+            @Override
+            public String toString() {
+                return String.format(format, from) + "-" + String.format(format, to);
+            }
+        };
+    }
+
+    /**
+     * Create the set of the hosts listed in a file, one per line. Blank lines and lines starting with "#" are
+     * skipped. The file is read while the set is iterated, and an error reading it is thrown as an
+     * {@link UncheckedIOException}. Its iterators are {@link Closeable}, to close the file before the end.
+     *
+     * @param file the file listing the hosts
+     * @return the host set
+     */
+    public static HostSet file(Path file) {
+        Objects.requireNonNull(file);
+        return new HostSet() {
+            @Override
+            public Iterator<String> iterator() {
+                return new FileIterator(file);
+            }
+
+            @Override
+            public String toString() {
+                return "@" + file;
+            }
+        };
+    }
+
+    /**
+     * Create a host set backed by the given iterators, such as an inventory query.
+     *
+     * @param iterators the supplier of a new iterator over the hosts for each iteration
+     * @return the host set
+     */
+    public static HostSet of(Supplier<? extends Iterator<String>> iterators) {
+        Objects.requireNonNull(iterators);
+        return new HostSet() {
+            @Override
+            public Iterator<String> iterator() {
+                return iterators.get();
+            }
+
+            @Override
+            public String toString() {
+                return "hosts";
+            }
+        };
+    }
+
+    /**
+     * A range of IPv4 addresses stored as its bounds.
+     */
+    private static class Ipv4Range extends HostSet {
+
+        private final long first;
+
+        private final long last;
+
+        private final String description;
+
+        private Ipv4Range(long first, long last, String description) {
+            this.first = first;
+            this.last = last;
+            this.description = description;
+        }
+
+        @Override
+        public long size() {
+            return Math.max(0, last - first + 1);
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return new RangeIterator(first, last) {
+                @Override
+                String host(long number) {
+                    return Ipv4.format(number);
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+
+    }
+
+    /**
+     * Iterates over the hosts of a numeric range, creating each host name on demand.
+     */
+    private abstract static class RangeIterator implements Iterator<String> {
+
+        private final long last;
+
+        private long next;
+
+        private RangeIterator(long first, long last) {
+            this.next = first;
+            this.last = last;
+        }
+
+        abstract String host(long number);
+
+        @Override
+        public boolean hasNext() {
+            return next <= last;
+        }
+
+        @Override
+        public String next() {
+            if (next > last) {
+                throw new NoSuchElementException();
+            }
+
+            return host(next++);
+        }
+
+    }
+
+    /**
+     * Iterates over the hosts listed in a file, closing it once all lines were read or the iterator is closed.
+     */
+    private static class FileIterator implements Iterator<String>, Closeable {
+
+        private final BufferedReader reader;
+
+        private String next;
+
+        private FileIterator(Path file) {
+            try {
+                this.reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            advance();
+        }
+
+        private void advance() {
+            try {
+                String line;
+
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+
+                    if (!line.isEmpty() && !line.startsWith("#")) {
+                        next = line;
+                        return;
+                    }
+                }
+
+                next = null;
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public String next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+
+            String host = next;
+            advance();
+            return host;
+        }
+
+        @Override
+        public void close() throws IOException {
+            next = null;
+            reader.close();
+        }
+
+    }
+
+}
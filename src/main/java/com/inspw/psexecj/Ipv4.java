@@ -0,0 +1,57 @@
+package com.inspw.psexecj;
+
+/**
+ * Parsing and formatting of IPv4 addresses as unsigned 32-bit numbers, without any name resolution.
+ */
+final class Ipv4 {
+
+    private Ipv4() {
+    }
+
+    /**
+     * Parse a dotted-quad IPv4 address.
+     *
+     * @param host the host to parse
+     * @return the address as an unsigned number, or -1 if the host is not an IPv4 address
+     */
+    static long parse(String host) {
+        long address = 0;
+        int octets = 0;
+        int value = -1;
+
+        for (int i = 0, length = host.length(); i <= length; i++) {
+            char c = i < length ? host.charAt(i) : '.';
+
+            if (c == '.') {
+                if (value < 0 || ++octets > 4) {
+                    return -1;
+                }
+
+                address = address << 8 | value;
+                value = -1;
+            } else if (c >= '0' && c <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+
+                if (value > 255) {
+                    return -1;
+                }
+            } else {
+                return -1;
+            }
+        }
+
+        return octets == 4 ? address : -1;
+    }
+
+    /**
+     * Format an IPv4 address as a dotted quad.
+     *
+     * @param address the address as an unsigned number
+     * @return the formatted address
+     */
+    static String format(long address) {
+        return ((address >>> 24) & 255) + "." + ((address >>> 16) & 255) + "."
+                + ((address >>> 8) & 255) + "." + (address & 255);
+    }
+
+}
@@ -0,0 +1,163 @@
+package com.inspw.psexecj;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with log-linear buckets, in the style of HdrHistogram.
+ * Latencies are recorded in microseconds with a relative error of about 3%, up to about 71 minutes.
+ */
+public class LatencyHistogram {
+
+    /**
+     * The number of bits of precision kept for each power of two.
+     */
+    private static final int SUB_BUCKET_BITS = 5;
+
+    private static final int SUB_BUCKET_HALF = 1 << (SUB_BUCKET_BITS - 1);
+
+    /**
+     * The highest trackable latency in microseconds. Higher latencies are clamped.
+     */
+    private static final long MAX_MICROS = (1L << 32) - 1;
+
+    private static final int BUCKET_COUNT = index(MAX_MICROS) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    private final LongAdder totalMicros = new LongAdder();
+
+    /**
+     * Record a latency.
+     *
+     * @param latency the latency to record
+     */
+    public void record(Duration latency) {
+        recordNanos(latency.toNanos());
+    }
+
+    /**
+     * Record a latency in nanoseconds.
+     *
+     * @param nanos the latency to record
+     */
+    public void recordNanos(long nanos) {
+        long micros = Math.min(MAX_MICROS, Math.max(0, nanos / 1000));
+        counts.incrementAndGet(index(micros));
+        totalMicros.add(micros);
+    }
+
+    /**
+     * Take a snapshot of the recorded latencies. Recording may continue while the snapshot is taken.
+     *
+     * @return the snapshot
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        long count = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+
+        return new Snapshot(copy, count, totalMicros.sum());
+    }
+
+    private static int index(long micros) {
+        int msb = 63 - Long.numberOfLeadingZeros(micros | 1);
+
+        if (msb < SUB_BUCKET_BITS) {
+            return (int) micros;
+        }
+
+        int shift = msb - SUB_BUCKET_BITS + 1;
+        return shift * SUB_BUCKET_HALF + (int) (micros >>> shift);
+    }
+
+    private static long highestValue(int index) {
+        if (index < 2 * SUB_BUCKET_HALF) {
+            return index;
+        }
+
+        int shift = index / SUB_BUCKET_HALF - 1;
+        long top = index - (long) shift * SUB_BUCKET_HALF;
+        return ((top + 1) << shift) - 1;
+    }
+
+    public static class Snapshot {
+
+        private final long[] counts;
+
+        private final long count;
+
+        private final long totalMicros;
+
+        private Snapshot(long[] counts, long count, long totalMicros) {
+            this.counts = counts;
+            this.count = count;
+            this.totalMicros = totalMicros;
+        }
+
+        /**
+         * Get the number of recorded latencies.
+         *
+         * @return the count
+         */
+        public long count() {
+            return count;
+        }
+
+        /**
+         * Get the mean of the recorded latencies.
+         *
+         * @return the mean latency, or zero if none were recorded
+         */
+        public Duration mean() {
+            return count == 0 ? Duration.ZERO : Duration.ofNanos(totalMicros / count * 1000);
+        }
+
+        /**
+         * Get the latency below or at which the given percentage of latencies were recorded.
+         *
+         * @param percentile the percentile, between 0 and 100
+         * @return the latency, or zero if none were recorded
+         */
+        public Duration percentile(double percentile) {
+            if (count == 0) {
+                return Duration.ZERO;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100));
+            long seen = 0;
+
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+
+                if (seen >= rank) {
+                    return Duration.ofNanos(highestValue(i) * 1000);
+                }
+            }
+
+            return max();
+        }
+
+        /**
+         * Get the highest recorded latency, within the histogram precision.
+         *
+         * @return the maximum latency, or zero if none were recorded
+         */
+        public Duration max() {
+            for (int i = counts.length - 1; i >= 0; i--) {
+                if (counts[i] > 0) {
+                    return Duration.ofNanos(highestValue(i) * 1000);
+                }
+            }
+
+            return Duration.ZERO;
+        }
+
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.inspw.psexecj;
+
+/**
+ * Compact latency sketch with logarithmic buckets, four per power of two, from 1 millisecond to about 70 minutes.
+ * Counts are halved once the window is full, so the sketch follows recent latencies.
+ *
+ * Latencies cut short by a timeout are recorded as censored: they rank above every observed latency,
+ * without their wall time standing in for the latency they would have had.
+ */
+class LatencySketch {
+
+    private static final int BUCKETS_PER_DOUBLING = 4;
+
+    private static final int BUCKET_COUNT = 22 * BUCKETS_PER_DOUBLING + 1;
+
+    private final int[] counts = new int[BUCKET_COUNT];
+
+    private final int window;
+
+    private int count;
+
+    /**
+     * The number of censored latencies, included in the count.
+     */
+    private int censored;
+
+    /**
+     * The wall time of the latest censored latency.
+     */
+    private long lastCensored;
+
+    /**
+     * Create a latency sketch.
+     *
+     * @param window the number of latencies after which older latencies start to fade out
+     */
+    LatencySketch(int window) {
+        this.window = window;
+    }
+
+    /**
+     * Record a latency.
+     *
+     * @param millis the latency in milliseconds
+     */
+    synchronized void record(long millis) {
+        fade();
+        counts[index(millis)]++;
+        count++;
+    }
+
+    /**
+     * Record a latency cut short by a timeout, known only to exceed the given wall time.
+     *
+     * @param millis the wall time in milliseconds until the execution was cut short
+     */
+    synchronized void censor(long millis) {
+        fade();
+        censored++;
+        count++;
+        lastCensored = millis;
+    }
+
+    private void fade() {
+        if (count >= window) {
+            censored >>= 1;
+            count = censored;
+
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] >>= 1;
+                count += counts[i];
+            }
+        }
+    }
+
+    /**
+     * Get the number of latencies in the sketch, after fading.
+     *
+     * @return the count
+     */
+    synchronized int count() {
+        return count;
+    }
+
+    /**
+     * Get the latency below or at which the given percentage of latencies were recorded.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the upper bound of the bucket holding the percentile in milliseconds, 0 if the sketch is empty,
+     * or -1 if the percentile falls among the censored latencies
+     */
+    synchronized long percentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Get the wall time of the latest censored latency.
+     *
+     * @return the wall time in milliseconds, or 0 if no latency was censored
+     */
+    synchronized long lastCensored() {
+        return lastCensored;
+    }
+
+    private static int index(long millis) {
+        if (millis <= 1) {
+            return 0;
+        }
+
+        double doublings = Math.log(millis) / Math.log(2);
+        return (int) Math.min(BUCKET_COUNT - 1, Math.ceil(doublings * BUCKETS_PER_DOUBLING));
+    }
+
+    private static long upperBound(int index) {
+        return (long) Math.ceil(Math.pow(2, (double) index / BUCKETS_PER_DOUBLING));
+    }
+
+}
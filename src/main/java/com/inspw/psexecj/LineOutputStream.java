@@ -0,0 +1,77 @@
+package com.inspw.psexecj;
+
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.function.Consumer;
+
+/**
+ * Stream splitting written bytes into lines, using a fixed size line buffer.
+ */
+class LineOutputStream extends OutputStream {
+
+    private final Consumer<String> consumer;
+
+    private final Charset charset;
+
+    private final byte[] line;
+
+    private int length;
+
+    /**
+     * Create a line splitting stream.
+     *
+     * @param consumer      the consumer to receive the lines
+     * @param charset       the charset to decode the lines with
+     * @param maxLineLength the line buffer size in bytes
+     */
+    LineOutputStream(Consumer<String> consumer, Charset charset, int maxLineLength) {
+        this.consumer = consumer;
+        this.charset = charset;
+        this.line = new byte[maxLineLength];
+    }
+
+    @Override
+    public void write(int b) {
+        if (b == '\n') {
+            emit();
+            return;
+        }
+
+        if (length == line.length) {
+            emit();
+        }
+
+        line[length++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        int end = off + len;
+
+        for (int i = off; i < end; i++) {
+            write(b[i]);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (length > 0) {
+            emit();
+        }
+    }
+
+    /**
+     * Deliver the buffered line, stripping a trailing carriage return.
+     */
+    private void emit() {
+        int end = length;
+
+        if (end > 0 && line[end - 1] == '\r') {
+            end--;
+        }
+
+        consumer.accept(new String(line, 0, end, charset));
+        length = 0;
+    }
+
+}
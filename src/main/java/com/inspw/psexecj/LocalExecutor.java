@@ -0,0 +1,41 @@
+package com.inspw.psexecj;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+
+/**
+ * Runs commands targeting the local computer directly through a {@link Transport}, skipping the PsExec process.
+ */
+@Getter
+@Setter
+public class LocalExecutor extends ProcessExecutor {
+
+    /**
+     * The transport spawning the process of each command.
+     */
+    @NonNull
+    private Transport transport = new LocalTransport();
+
+    /**
+     * Create a local executor instance.
+     *
+     * @param executeTimeout the timeout in milliseconds
+     */
+    public LocalExecutor(int executeTimeout) {
+        super(executeTimeout);
+    }
+
+    /**
+     * Create a local executor instance with no timeout.
+     */
+    public LocalExecutor() {
+        this(0);
+    }
+
+    @Override
+    protected ProcessBuilder prepare(Command command, String computer) {
+        return transport.prepare(command, computer);
+    }
+
+}
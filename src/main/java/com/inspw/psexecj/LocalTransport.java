@@ -0,0 +1,154 @@
+package com.inspw.psexecj;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Runs commands targeting the local computer directly, instead of through PsExec.
+ * The working directory is applied to the process, and on Linux the priority and processors are applied
+ * with {@code nice} and {@code taskset}. Commands with options only PsExec can apply, such as running as
+ * another user or in another session, are not accepted.
+ *
+ * Created as a stand-in, the transport ignores the computers a command targets and runs every command once on
+ * the local computer, so that code written against remote computers can be tested without PsExec.
+ */
+public class LocalTransport implements Transport {
+
+    /**
+     * The computer names designating the local computer.
+     */
+    private static final Set<String> LOCAL_NAMES = Set.of("localhost", "127.0.0.1", "::1", ".");
+
+    private final boolean windows = System.getProperty("os.name").startsWith("Windows");
+
+    private final boolean linux = System.getProperty("os.name").startsWith("Linux");
+
+    /**
+     * Whether the computers targeted by commands are ignored.
+     */
+    private final boolean standIn;
+
+    /**
+     * Create a transport accepting commands that target the local computer only.
+     */
+    public LocalTransport() {
+        this(false);
+    }
+
+    /**
+     * Create a transport, optionally standing in for PsExec by running commands targeting any computer locally.
+     *
+     * @param standIn whether to ignore the computers targeted by commands
+     */
+    public LocalTransport(boolean standIn) {
+        this.standIn = standIn;
+    }
+
+    @Override
+    public boolean accepts(Command command, String computer) {
+        if (!standIn && (computer != null ? !isLocal(computer) : !isLocal(command))) {
+            return false;
+        }
+
+        if (command.username() != null || command.runElevated() || command.runLimited() || command.asSystem()
+                || command.logonUI() || command.detach() || command.session() != Command.SESSION_NONE) {
+            return false;
+        }
+
+        if (command.priority() != Command.PRIORITY_NORMAL && windows) {
+            return false;
+        }
+
+        return command.processors() == null || linux;
+    }
+
+    @Override
+    public ProcessBuilder prepare(Command command, String computer) {
+        if (!accepts(command, computer)) {
+            throw new IllegalArgumentException("Command cannot run locally: " + command.targetName());
+        }
+
+        List<String> tokens = new ArrayList<>();
+
+        if (command.priority() != Command.PRIORITY_NORMAL) {
+            tokens.add("nice");
+            tokens.add("-n");
+            tokens.add(Integer.toString(niceness(command.priority())));
+        }
+
+        if (command.processors() != null) {
+            // PsExec numbers processors from 1, taskset from 0.
+            tokens.add("taskset");
+            tokens.add("-c");
+            tokens.add(Arrays.stream(command.processors())
+                    .mapToObj(processor -> Integer.toString(processor - 1))
+                    .collect(Collectors.joining(","))
+            );
+        }
+
+        tokens.add(command.cmd());
+
+        if (command.arguments() != null) {
+            Collections.addAll(tokens, command.arguments());
+        }
+
+        ProcessBuilder builder = new ProcessBuilder(tokens);
+
+        if (command.workingDirectory() != null) {
+            builder.directory(new File(command.workingDirectory()));
+        }
+
+        return builder;
+    }
+
+    /**
+     * Check whether the given command targets the local computer only.
+     *
+     * @param command the command
+     * @return true if the command targets no remote computer
+     */
+    private static boolean isLocal(Command command) {
+        if (command.computerListFile() != null || !command.hostSets().isEmpty()) {
+            return false;
+        }
+
+        List<String> computers = command.computers();
+        return computers.isEmpty() || computers.size() == 1 && isLocal(computers.get(0));
+    }
+
+    private static boolean isLocal(String computer) {
+        return LOCAL_NAMES.contains(computer.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Map a PsExec priority level to a niceness.
+     *
+     * @param priority the priority level
+     * @return the niceness
+     */
+    private static int niceness(int priority) {
+        switch (priority) {
+            case Command.PRIORITY_BACKGROUND:
+                return 19;
+            case Command.PRIORITY_LOW:
+                return 10;
+            case Command.PRIORITY_BELOW_NORMAL:
+                return 5;
+            case Command.PRIORITY_ABOVE_NORMAL:
+                return -5;
+            case Command.PRIORITY_HIGH:
+                return -10;
+            case Command.PRIORITY_REALTIME:
+                return -20;
+            default:
+                return 0;
+        }
+    }
+
+}
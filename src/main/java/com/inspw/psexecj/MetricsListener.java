@@ -0,0 +1,202 @@
+package com.inspw.psexecj;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Listener collecting execution counters and latency histograms, overall, per host and per command.
+ * Recording is lock-free, and snapshots can be taken at any time without pausing executions.
+ * Each tracked host and command keeps its own histogram of a few kilobytes, so only a bounded number of them
+ * is tracked: once full, the hosts and commands recorded least recently are evicted.
+ * Executions targeting several computers at once are only counted overall and per command,
+ * as their wall time says nothing about any single computer.
+ */
+public class MetricsListener implements ExecutorListener {
+
+    private final LongAdder queued = new LongAdder();
+
+    private final LongAdder spawned = new LongAdder();
+
+    private final LongAdder spawnFailed = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final LongAdder timedOut = new LongAdder();
+
+    private final LongAdder completed = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private final LatencyHistogram spawnTimes = new LatencyHistogram();
+
+    private final LatencyHistogram firstOutputTimes = new LatencyHistogram();
+
+    private final LatencyHistogram wallTimes = new LatencyHistogram();
+
+    private final Histograms hostWallTimes;
+
+    private final Histograms cmdWallTimes;
+
+    /**
+     * Create a metrics listener tracking up to 1024 hosts and 1024 commands.
+     */
+    public MetricsListener() {
+        this(1024);
+    }
+
+    /**
+     * Create a metrics listener.
+     *
+     * @param capacity the maximum number of hosts, and of commands, to keep a histogram for
+     */
+    public MetricsListener(int capacity) {
+        this.hostWallTimes = new Histograms(capacity);
+        this.cmdWallTimes = new Histograms(capacity);
+    }
+
+    @Override
+    public void onQueued(Command command) {
+        queued.increment();
+    }
+
+    @Override
+    public void onSpawned(Command command, long pid, Duration spawnTime) {
+        spawned.increment();
+        spawnTimes.record(spawnTime);
+    }
+
+    @Override
+    public void onFirstOutput(Command command, OutputSource source, Duration elapsed) {
+        firstOutputTimes.record(elapsed);
+    }
+
+    @Override
+    public void onTimedOut(Command command) {
+        timedOut.increment();
+    }
+
+    @Override
+    public void onCompleted(Command command, ExecutionResult result) {
+        completed.increment();
+
+        if (result.termination() == Termination.SPAWN_FAILED) {
+            spawnFailed.increment();
+            return;
+        }
+
+        if (result.termination() == Termination.REJECTED) {
+            rejected.increment();
+            return;
+        }
+
+        if (!result.succeeded()) {
+            failed.increment();
+        }
+
+        long nanos = result.wallTime().toNanos();
+        wallTimes.recordNanos(nanos);
+        cmdWallTimes.record(command.cmd(), nanos);
+
+        String host = command.singleTarget();
+
+        if (host != null) {
+            hostWallTimes.record(host, nanos);
+        }
+    }
+
+    /**
+     * Take a snapshot of the collected metrics.
+     *
+     * @return the snapshot
+     */
+    public MetricsSnapshot snapshot() {
+        return new MetricsSnapshot(
+                queued.sum(),
+                spawned.sum(),
+                spawnFailed.sum(),
+                rejected.sum(),
+                timedOut.sum(),
+                completed.sum(),
+                failed.sum(),
+                spawnTimes.snapshot(),
+                firstOutputTimes.snapshot(),
+                wallTimes.snapshot(),
+                hostWallTimes.snapshot(),
+                cmdWallTimes.snapshot()
+        );
+    }
+
+    /**
+     * A bounded set of histograms, evicting the least recently recorded ones once full.
+     */
+    private static final class Histograms {
+
+        private final ConcurrentHashMap<String, Tracked> histograms = new ConcurrentHashMap<>();
+
+        private final AtomicBoolean evicting = new AtomicBoolean();
+
+        private final int capacity;
+
+        private Histograms(int capacity) {
+            this.capacity = Math.max(1, capacity);
+        }
+
+        private void record(String key, long nanos) {
+            long now = System.nanoTime();
+            Tracked tracked = histograms.computeIfAbsent(key, k -> new Tracked());
+            tracked.lastRecorded = now;
+            tracked.histogram.recordNanos(nanos);
+
+            if (histograms.size() > capacity) {
+                evict(now);
+            }
+        }
+
+        /**
+         * Evict the least recently recorded histograms until the set is a quarter below capacity.
+         * Eviction happens in batches so that a full set does not scan its histograms on every new key.
+         *
+         * @param now the current time in nanoseconds
+         */
+        private void evict(long now) {
+            if (!evicting.compareAndSet(false, true)) {
+                return;
+            }
+
+            try {
+                int excess = histograms.size() - capacity * 3 / 4;
+
+                if (excess > 0) {
+                    histograms.entrySet().stream()
+                            .sorted(Comparator.comparingLong(entry -> entry.getValue().lastRecorded - now))
+                            .limit(excess)
+                            .map(Map.Entry::getKey)
+                            .forEach(histograms::remove);
+                }
+            } finally {
+                evicting.set(false);
+            }
+        }
+
+        private Map<String, LatencyHistogram.Snapshot> snapshot() {
+            Map<String, LatencyHistogram.Snapshot> snapshots = new HashMap<>();
+            histograms.forEach((key, tracked) -> snapshots.put(key, tracked.histogram.snapshot()));
+            return snapshots;
+        }
+
+    }
+
+    private static final class Tracked {
+
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        private volatile long lastRecorded;
+
+    }
+
+}
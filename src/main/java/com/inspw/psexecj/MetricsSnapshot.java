@@ -0,0 +1,75 @@
+package com.inspw.psexecj;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+
+import java.util.Map;
+
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+@Accessors(fluent = true)
+@Getter
+public class MetricsSnapshot {
+
+    /**
+     * The number of submitted executions.
+     */
+    private final long queued;
+
+    /**
+     * The number of spawned programs.
+     */
+    private final long spawned;
+
+    /**
+     * The number of programs that could not be spawned.
+     */
+    private final long spawnFailed;
+
+    /**
+     * The number of executions rejected before spawning their program.
+     */
+    private final long rejected;
+
+    /**
+     * The number of executions that reached their timeout.
+     */
+    private final long timedOut;
+
+    /**
+     * The number of executions that produced a result.
+     */
+    private final long completed;
+
+    /**
+     * The number of spawned executions that did not succeed.
+     */
+    private final long failed;
+
+    /**
+     * The time taken to spawn programs.
+     */
+    private final LatencyHistogram.Snapshot spawnTimes;
+
+    /**
+     * The time from submission until the first output.
+     */
+    private final LatencyHistogram.Snapshot firstOutputTimes;
+
+    /**
+     * The wall time of spawned executions.
+     */
+    private final LatencyHistogram.Snapshot wallTimes;
+
+    /**
+     * The wall time of spawned executions targeting a single host, per host, for the hosts recorded most recently.
+     */
+    private final Map<String, LatencyHistogram.Snapshot> hostWallTimes;
+
+    /**
+     * The wall time of spawned executions, per executed command, for the commands recorded most recently.
+     */
+    private final Map<String, LatencyHistogram.Snapshot> cmdWallTimes;
+
+}
@@ -0,0 +1,48 @@
+package com.inspw.psexecj;
+
+import lombok.*;
+import lombok.experimental.Accessors;
+
+import java.io.File;
+
+@Builder(builderMethodName = "prepare")
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@Accessors(fluent = true)
+@Getter
+public class OutputCapture {
+
+    /**
+     * The number of leading bytes of each output stream to keep in memory.
+     */
+    @Builder.Default
+    private final int headSize = 16 * 1024;
+
+    /**
+     * The number of trailing bytes of each output stream to keep in memory.
+     * Bytes between the head and the tail are dropped unless spilling is enabled.
+     */
+    @Builder.Default
+    private final int tailSize = 16 * 1024;
+
+    /**
+     * Spill the whole output stream to a temporary file once it exceeds
+     * the spill threshold, instead of dropping its middle.
+     */
+    @Builder.Default
+    private final boolean spill = false;
+
+    /**
+     * The number of bytes of each output stream kept in memory before it is spilled, at least the head size.
+     * Output streams up to this size are captured whole in memory.
+     * Set to 0 to spill once the output exceeds the head and tail sizes combined.
+     */
+    @Builder.Default
+    private final int spillThreshold = 0;
+
+    /**
+     * The directory to create spill files in, or null for the default temporary directory.
+     */
+    @Builder.Default
+    private final File spillDirectory = null;
+
+}
@@ -0,0 +1,76 @@
+package com.inspw.psexecj;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Copies the output of a process into an output sink on a shared pool of draining threads.
+ *
+ * Process pipes only offer blocking reads, so each drained stream holds a thread until its output ends: an
+ * execution whose output is piped into the JVM costs two threads, on top of the process itself. The pool grows
+ * with the number of such executions and shrinks once they end. Executions with neither output sink nor capture,
+ * or with their output redirected into files, do not use the pool at all, so large fleets should prefer those.
+ */
+final class OutputDrainer {
+
+    /**
+     * The size of the buffer used for each drained stream.
+     */
+    static final int BUFFER_SIZE = 8192;
+
+    private static final ExecutorService POOL = Executors.newCachedThreadPool(
+            CompletionPool.daemonThreadFactory("psexecj-drain-")
+    );
+
+    private OutputDrainer() {
+    }
+
+    /**
+     * Start draining the given process output into the given stream.
+     * If the stream fails, the remaining output is still read and discarded so that the process does not stall.
+     *
+     * @param input  the process output to read
+     * @param output the stream to write to, closed once the process output ends
+     * @return the future completing once the process output has ended
+     */
+    static CompletableFuture<Void> drain(InputStream input, OutputStream output) {
+        return CompletableFuture.runAsync(() -> {
+            IOException failure = null;
+            byte[] buffer = new byte[BUFFER_SIZE];
+
+            try (InputStream in = input) {
+                int read;
+
+                while ((read = in.read(buffer)) != -1) {
+                    if (failure == null) {
+                        try {
+                            output.write(buffer, 0, read);
+                        } catch (IOException | RuntimeException e) {
+                            failure = e instanceof IOException ? (IOException) e : new IOException(e);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // The stream is closed when the process is destroyed.
+            } finally {
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+
+            if (failure != null) {
+                throw new UncheckedIOException(failure);
+            }
+        }, POOL);
+    }
+
+}
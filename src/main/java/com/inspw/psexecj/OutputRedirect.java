@@ -0,0 +1,110 @@
+package com.inspw.psexecj;
+
+import lombok.*;
+import lombok.experimental.Accessors;
+
+import java.io.File;
+import java.util.Locale;
+
+@Builder(builderMethodName = "prepare")
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@Accessors(fluent = true)
+@Getter
+public class OutputRedirect {
+
+    /**
+     * Placeholder replaced with the targeted computer, or "local" if none is targeted. A command targeting several
+     * computers at once is named after its first computer, followed by "+" and a hash of all of its targets,
+     * which keeps the file name short whatever the number of computers.
+     */
+    public static final String HOST = "{host}";
+
+    /**
+     * Placeholder replaced with the file name of the executed command.
+     */
+    public static final String CMD = "{cmd}";
+
+    /**
+     * Placeholder replaced with "stdout" or "stderr".
+     * If omitted from the template, both output streams are written to the same file.
+     */
+    public static final String STREAM = "{stream}";
+
+    /**
+     * The maximum length of the first target naming a command that targets several computers.
+     */
+    private static final int MAX_FIRST_LENGTH = 64;
+
+    /**
+     * The directory to write the output files into.
+     */
+    @NonNull
+    private final File directory;
+
+    /**
+     * The file name template of the output files.
+     */
+    @Builder.Default
+    @NonNull
+    private final String template = HOST + "-" + STREAM + ".log";
+
+    /**
+     * Append to existing output files instead of overwriting them.
+     */
+    @Builder.Default
+    private final boolean append = false;
+
+    /**
+     * Resolve the output file of the given command and output stream.
+     * Characters that are not allowed in file names are replaced with underscores.
+     *
+     * @param command the command being executed
+     * @param source  the output stream
+     * @return the output file
+     */
+    public File resolve(Command command, OutputSource source) {
+        String cmd = new File(command.cmd()).getName();
+        String name = template
+                .replace(HOST, sanitize(host(command)))
+                .replace(CMD, sanitize(cmd))
+                .replace(STREAM, source.name().toLowerCase(Locale.ROOT));
+
+        return new File(directory, name);
+    }
+
+    /**
+     * Check whether both output streams are written to the same file.
+     *
+     * @return true if the streams are merged
+     */
+    public boolean isMerged() {
+        return !template.contains(STREAM);
+    }
+
+    /**
+     * Name the computers targeted by the given command.
+     *
+     * @param command the command being executed
+     * @return the name of the single target, or the first target and a hash of all targets
+     */
+    private static String host(Command command) {
+        if (command.computerListFile() != null || command.hostSets().isEmpty() && command.computers().size() <= 1) {
+            return command.targetName();
+        }
+
+        String first = command.computers().isEmpty()
+                ? command.hostSets().get(0).toString()
+                : command.computers().get(0);
+
+        if (first.length() > MAX_FIRST_LENGTH) {
+            first = first.substring(0, MAX_FIRST_LENGTH);
+        }
+
+        return first + "+" + Integer.toHexString(command.targetName().hashCode());
+    }
+
+    private static String sanitize(String value) {
+        return value.replaceAll("[\\\\/:*?\"<>|]", "_");
+    }
+
+}
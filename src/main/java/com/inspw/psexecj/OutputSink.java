@@ -0,0 +1,164 @@
+package com.inspw.psexecj;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Destination of the output of executed commands.
+ * Both output streams of an execution are drained at the same time, each into its own opened stream.
+ */
+@FunctionalInterface
+public interface OutputSink {
+
+    /**
+     * The default line length limit in bytes, after which a line is split.
+     */
+    int DEFAULT_MAX_LINE_LENGTH = 8192;
+
+    /**
+     * Discard all output. The output is never read into the JVM.
+     */
+    OutputSink DISCARD = (command, source) -> OutputStream.nullOutputStream();
+
+    /**
+     * Open a stream receiving one output stream of an execution.
+     * The stream is written to from a single draining thread and closed once the output ends.
+     *
+     * @param command the command being executed
+     * @param source  the output stream to receive
+     * @return the stream to write the output to
+     * @throws IOException if an I/O error occurs
+     */
+    OutputStream open(Command command, OutputSource source) throws IOException;
+
+    /**
+     * Create a sink that delivers the output line by line, decoded with the default charset.
+     *
+     * @param listener the listener to receive the lines
+     * @return the sink instance
+     */
+    static OutputSink lines(LineListener listener) {
+        return lines(listener, Charset.defaultCharset(), DEFAULT_MAX_LINE_LENGTH);
+    }
+
+    /**
+     * Create a sink that delivers the output line by line.
+     * Lines longer than the given limit are delivered in several parts.
+     *
+     * @param listener      the listener to receive the lines
+     * @param charset       the charset to decode the output with
+     * @param maxLineLength the line length limit in bytes
+     * @return the sink instance
+     */
+    static OutputSink lines(LineListener listener, Charset charset, int maxLineLength) {
+        if (maxLineLength <= 0) {
+            throw new IllegalArgumentException("maxLineLength must be positive");
+        }
+
+        return (command, source) -> new LineOutputStream(
+                line -> listener.line(command, source, line), charset, maxLineLength
+        );
+    }
+
+    /**
+     * Create a sink that delivers the output in raw chunks as they are read.
+     *
+     * @param listener the listener to receive the chunks
+     * @return the sink instance
+     */
+    static OutputSink chunks(ChunkListener listener) {
+        return (command, source) -> new OutputStream() {
+            @Override
+            public void write(int b) {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                listener.chunk(command, source, b, off, len);
+            }
+        };
+    }
+
+    /**
+     * Create a sink that reports the outcome of each computer of a multi-computer PsExec invocation as soon
+     * as PsExec prints it. A computer that could not be reached is reported with an exit code of -1.
+     * Only the error output, on which PsExec prints its status, is scanned, so that remote programs
+     * cannot forge the outcome of a computer by printing a status line.
+     *
+     * @param listener the listener to receive the outcome of each computer
+     * @return the sink instance
+     */
+    static OutputSink hostExits(HostExitListener listener) {
+        return (command, source) -> source == OutputSource.STDERR
+                ? new HostExitOutputStream(command, listener, Charset.defaultCharset(), DEFAULT_MAX_LINE_LENGTH)
+                : OutputStream.nullOutputStream();
+    }
+
+    /**
+     * Create a sink that delivers the output to both given sinks.
+     *
+     * @param first  the first sink
+     * @param second the second sink
+     * @return the sink instance
+     */
+    static OutputSink both(OutputSink first, OutputSink second) {
+        if (first == DISCARD) {
+            return second;
+        }
+
+        if (second == DISCARD) {
+            return first;
+        }
+
+        return (command, source) -> new TeeOutputStream(first.open(command, source), second.open(command, source));
+    }
+
+    @FunctionalInterface
+    interface LineListener {
+
+        /**
+         * Receive a line of output, without its line terminator.
+         *
+         * @param command the command being executed
+         * @param source  the output stream the line was read from
+         * @param line    the line
+         */
+        void line(Command command, OutputSource source, String line);
+
+    }
+
+    @FunctionalInterface
+    interface ChunkListener {
+
+        /**
+         * Receive a chunk of output. The buffer is reused after returning and must not be retained.
+         *
+         * @param command the command being executed
+         * @param source  the output stream the chunk was read from
+         * @param buffer  the buffer holding the chunk
+         * @param offset  the offset of the chunk in the buffer
+         * @param length  the length of the chunk
+         */
+        void chunk(Command command, OutputSource source, byte[] buffer, int offset, int length);
+
+    }
+
+    @FunctionalInterface
+    interface HostExitListener {
+
+        /**
+         * Receive the outcome of a computer of a multi-computer invocation.
+         *
+         * @param command     the command being executed
+         * @param computer    the computer as printed by PsExec
+         * @param termination {@link Termination#EXITED}, or {@link Termination#UNREACHABLE} if the computer
+         *                    could not be reached
+         * @param exitCode    the exit code of the command on the computer, or -1 if the computer could not be reached
+         */
+        void ended(Command command, String computer, Termination termination, int exitCode);
+
+    }
+
+}
@@ -0,0 +1,15 @@
+package com.inspw.psexecj;
+
+public enum OutputSource {
+
+    /**
+     * The standard output stream of the executed program.
+     */
+    STDOUT,
+
+    /**
+     * The standard error stream of the executed program.
+     */
+    STDERR
+
+}
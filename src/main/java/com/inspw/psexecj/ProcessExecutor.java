@@ -0,0 +1,533 @@
+package com.inspw.psexecj;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Base of the executors spawning one local process per execution. It applies the timeouts, drains, captures or
+ * redirects the output, notifies the listener and kills the process tree on cancellation and shutdown, while
+ * subclasses decide which process to spawn for a command.
+ */
+@Getter
+@Setter
+public abstract class ProcessExecutor implements Executor, AsyncExecutor {
+
+    /**
+     * The timeout in milliseconds when executing the executable.
+     * This timeout is measured at the start of an execution of the PsExec program.
+     * It is mainly used to kill PsExec when stuck in an unresponsive state.
+     * Set to 0 to disable execution timeout.
+     */
+    private int executeTimeout;
+
+    /**
+     * The grace period in milliseconds between asking a timed out process tree to terminate and killing it forcibly.
+     * Set to 0 to kill timed out process trees forcibly right away.
+     */
+    private long killGracePeriod = 1000;
+
+    /**
+     * Decide the timeout of each execution instead of applying the execute timeout as is,
+     * for example from the latencies observed per computer with an {@link AdaptiveTimeoutPolicy}.
+     * Set to null to apply the execute timeout to every execution.
+     */
+    private TimeoutPolicy timeoutPolicy;
+
+    /**
+     * Capture the output of each execution into its result with bounded memory.
+     * Like output sinks, capture pipes the output into the JVM, which takes two draining threads per running
+     * execution; see {@link OutputDrainer}.
+     * Set to null to disable output capture.
+     */
+    private OutputCapture outputCapture;
+
+    /**
+     * Have the operating system write the output of each execution directly into files.
+     * When set, the output never passes through the JVM, so output sinks and output capture are bypassed.
+     * Set to null to disable output redirection.
+     */
+    private OutputRedirect outputRedirect;
+
+    /**
+     * The time in milliseconds the output of an ended program is waited for before its execution completes anyway.
+     * A process left behind by the program may inherit its output and keep it open; the output it writes later
+     * still reaches the output sink, but the result then carries no captured output.
+     * Set to 0 to wait until the output ends.
+     */
+    private long outputGracePeriod = 2000;
+
+    /**
+     * The listener receiving events about executions.
+     */
+    @NonNull
+    private ExecutorListener listener = ExecutorListener.NONE;
+
+    /**
+     * The executions whose program is running.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final Set<ExecutionFuture> inFlight = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The number of submitted executions that have not completed yet.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final AtomicInteger active = new AtomicInteger();
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile boolean shutdown;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final CompletableFuture<Void> terminated = new CompletableFuture<>();
+
+    /**
+     * Create a process executor instance.
+     *
+     * @param executeTimeout the timeout in milliseconds
+     */
+    protected ProcessExecutor(int executeTimeout) {
+        this.executeTimeout = executeTimeout;
+    }
+
+    /**
+     * Prepare the process to spawn for the given command.
+     *
+     * @param command  the command to execute
+     * @param computer the computer to target, or null to target the computers of the command
+     * @return the process builder of the command
+     */
+    protected abstract ProcessBuilder prepare(Command command, String computer);
+
+    @Override
+    public ExecutionResult execute(Command command) throws IOException {
+        ExecutionFuture result = launch(command, prepare(command, null));
+
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return result.interrupt();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+
+            throw new IOException(cause);
+        }
+    }
+
+    @Override
+    public CompletableFuture<ExecutionResult> submit(Command command, String computer) {
+        ProcessBuilder builder;
+
+        try {
+            builder = prepare(command, computer);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return launch(command, builder);
+    }
+
+    /**
+     * Spawn the program for the given command.
+     * Output is only piped into the JVM when it is drained into a sink or captured.
+     *
+     * @param command the command to spawn
+     * @param builder the process builder prepared for the command
+     * @return the spawned process
+     * @throws IOException if an I/O error occurs
+     */
+    private Process start(Command command, ProcessBuilder builder) throws IOException {
+        OutputRedirect outputRedirect = getOutputRedirect();
+
+        if (outputRedirect != null) {
+            File stdout = outputRedirect.resolve(command, OutputSource.STDOUT);
+            builder.redirectOutput(outputRedirect.append()
+                    ? ProcessBuilder.Redirect.appendTo(stdout)
+                    : ProcessBuilder.Redirect.to(stdout));
+
+            if (outputRedirect.isMerged()) {
+                builder.redirectErrorStream(true);
+            } else {
+                File stderr = outputRedirect.resolve(command, OutputSource.STDERR);
+                builder.redirectError(outputRedirect.append()
+                        ? ProcessBuilder.Redirect.appendTo(stderr)
+                        : ProcessBuilder.Redirect.to(stderr));
+            }
+        } else if (!isPiped(command)) {
+            builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+            builder.redirectError(ProcessBuilder.Redirect.DISCARD);
+        }
+
+        return builder.start();
+    }
+
+    /**
+     * Check whether the output of the given command has to be piped into the JVM.
+     *
+     * @param command the command to execute
+     * @return true if the output is drained into a sink or captured
+     */
+    private boolean isPiped(Command command) {
+        return getOutputRedirect() == null
+                && (command.outputSink() != OutputSink.DISCARD || getOutputCapture() != null);
+    }
+
+    /**
+     * Start draining one output stream of a process into the command's output sink and the capture.
+     *
+     * @param execution the execution being drained
+     * @param source    the output stream to drain
+     * @param input     the process output to read
+     * @return the future completing once the output stream has ended
+     */
+    private CompletableFuture<Void> drain(Execution execution, OutputSource source, InputStream input) {
+        Command command = execution.command();
+        CaptureOutputStream capture = execution.capture(source);
+        OutputStream output;
+
+        try {
+            output = command.outputSink() == OutputSink.DISCARD
+                    ? OutputStream.nullOutputStream()
+                    : command.outputSink().open(command, source);
+        } catch (IOException | RuntimeException e) {
+            OutputDrainer.drain(input, capture == null ? OutputStream.nullOutputStream() : capture);
+            return CompletableFuture.failedFuture(e);
+        }
+
+        if (capture != null) {
+            output = new TeeOutputStream(capture, output);
+        }
+
+        if (execution.listener() != ExecutorListener.NONE) {
+            output = new FirstOutputStream(output, execution, source);
+        }
+
+        return OutputDrainer.drain(input, output);
+    }
+
+    /**
+     * Submit a command with its prepared process builder for execution.
+     *
+     * @param command the command to execute
+     * @param builder the process builder prepared for the command
+     * @return the future result of the execution
+     */
+    ExecutionFuture launch(Command command, ProcessBuilder builder) {
+        return launch(command, builder, null);
+    }
+
+    /**
+     * Submit a command with its prepared process builder for execution, handing the result of the process
+     * to the given callback before the returned future completes.
+     *
+     * @param command the command to execute
+     * @param builder the process builder prepared for the command
+     * @param ended   the callback receiving the result of the process, or null
+     * @return the future result of the execution
+     */
+    ExecutionFuture launch(Command command, ProcessBuilder builder, Consumer<ExecutionResult> ended) {
+        ExecutorListener listener = getListener();
+        Execution execution = new Execution(command, listener);
+        ExecutionFuture result = new ExecutionFuture(execution);
+
+        active.incrementAndGet();
+
+        if (shutdown) {
+            result.complete(execution.fail(Termination.REJECTED,
+                    new RejectedExecutionException("Executor has been shut down")));
+            finished();
+            return result;
+        }
+
+        listener.onQueued(command);
+
+        try {
+            execution.spawned(start(command, builder));
+        } catch (IOException e) {
+            result.complete(execution.fail(Termination.SPAWN_FAILED, e));
+            finished();
+            return result;
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            finished();
+            return result;
+        }
+
+        inFlight.add(result);
+
+        Process proc = execution.process();
+        CompletableFuture<Void> drained = CompletableFuture.completedFuture(null);
+
+        if (isPiped(command)) {
+            if (getOutputCapture() != null) {
+                execution.capture(getOutputCapture());
+            }
+
+            drained = CompletableFuture.allOf(
+                    drain(execution, OutputSource.STDOUT, proc.getInputStream()),
+                    drain(execution, OutputSource.STDERR, proc.getErrorStream())
+            );
+        }
+
+        CompletableFuture<Void> output = drained;
+        TimeoutPolicy timeoutPolicy = getTimeoutPolicy();
+        long timeout = timeoutPolicy != null
+                ? timeoutPolicy.timeout(command, getExecuteTimeout())
+                : getExecuteTimeout();
+        DeadlineScheduler.Timeout deadline = timeout > 0
+                ? DeadlineScheduler.shared().schedule(() -> expire(execution), timeout, TimeUnit.MILLISECONDS)
+                : null;
+
+        proc.onExit().thenComposeAsync(p -> {
+            if (deadline != null) {
+                deadline.cancel();
+            }
+
+            // Only complete once all of the output has been delivered and captured, or the grace period ran out.
+            CompletableFuture<Void> delivered = awaitOutput(output);
+
+            if (execution.end(Termination.EXITED)) {
+                return delivered.thenApply(v -> execution.complete(Termination.EXITED, p.exitValue()));
+            }
+
+            return delivered.handle((v, t) -> execution.complete(execution.termination(), -1));
+        }, CompletionPool.get()).whenComplete((r, e) -> {
+            inFlight.remove(result);
+
+            if (e != null) {
+                result.completeExceptionally(e);
+            } else {
+                if (timeoutPolicy != null) {
+                    timeoutPolicy.record(command, r);
+                }
+
+                if (ended != null) {
+                    ended.accept(r);
+                }
+
+                if (!result.complete(r)) {
+                    // The execution was cancelled or interrupted, so nobody reads its output.
+                    r.release();
+                }
+            }
+
+            finished();
+        });
+
+        return result;
+    }
+
+    /**
+     * Bound the wait for the output of a program that ended by the output grace period.
+     *
+     * @param output the future completing once the output has ended
+     * @return the future completing once the output has ended or the grace period ran out
+     */
+    private CompletableFuture<Void> awaitOutput(CompletableFuture<Void> output) {
+        long gracePeriod = getOutputGracePeriod();
+
+        if (gracePeriod <= 0 || output.isDone()) {
+            return output;
+        }
+
+        CompletableFuture<Void> awaited = new CompletableFuture<>();
+        DeadlineScheduler.Timeout timeout = DeadlineScheduler.shared().schedule(() -> awaited.complete(null),
+                gracePeriod, TimeUnit.MILLISECONDS);
+        output.whenComplete((v, e) -> {
+            timeout.cancel();
+
+            if (e != null) {
+                awaited.completeExceptionally(e);
+            } else {
+                awaited.complete(null);
+            }
+        });
+        return awaited;
+    }
+
+    /**
+     * Kill the process tree of an execution that reached its timeout.
+     *
+     * @param execution the execution that timed out
+     */
+    private void expire(Execution execution) {
+        if (execution.end(Termination.TIMED_OUT)) {
+            execution.listener().onTimedOut(execution.command());
+            ProcessTrees.kill(execution.process().toHandle(), getKillGracePeriod());
+        }
+    }
+
+    /**
+     * Stop accepting new executions. Executions already running are left to finish,
+     * and executions submitted from now on complete as {@link Termination#REJECTED}.
+     */
+    public void shutdown() {
+        shutdown = true;
+
+        if (active.get() == 0) {
+            terminated.complete(null);
+        }
+    }
+
+    /**
+     * Stop accepting new executions and forcibly kill the process trees of all running executions.
+     * The killed executions complete as {@link Termination#KILLED}.
+     *
+     * @return the commands of the killed executions
+     */
+    public List<Command> shutdownNow() {
+        shutdown();
+
+        List<Command> killed = new ArrayList<>();
+
+        for (ExecutionFuture execution : inFlight) {
+            if (execution.kill(Termination.KILLED, 0)) {
+                killed.add(execution.execution.command());
+            }
+        }
+
+        return killed;
+    }
+
+    /**
+     * Check whether this executor was shut down.
+     *
+     * @return true if new executions are rejected
+     */
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    /**
+     * Check whether this executor was shut down and all of its executions have completed.
+     *
+     * @return true if the executor is terminated
+     */
+    public boolean isTerminated() {
+        return terminated.isDone();
+    }
+
+    /**
+     * Wait for all executions to complete after this executor was shut down.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return true if the executor terminated, false if the timeout was reached first
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            terminated.get(timeout, unit);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Record that a submitted execution has completed.
+     */
+    private void finished() {
+        if (active.decrementAndGet() == 0 && shutdown) {
+            terminated.complete(null);
+        }
+    }
+
+    /**
+     * The future result of a running execution, which doubles as its cancel handle.
+     */
+    class ExecutionFuture extends CompletableFuture<ExecutionResult> {
+
+        private final Execution execution;
+
+        private ExecutionFuture(Execution execution) {
+            this.execution = execution;
+        }
+
+        /**
+         * Cancel the execution, killing its process tree. The execution ends as {@link Termination#KILLED}.
+         *
+         * @param mayInterruptIfRunning ignored, the process tree is always killed
+         * @return true if the execution was cancelled
+         */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+
+            if (cancelled) {
+                kill(Termination.KILLED, getKillGracePeriod());
+            }
+
+            return cancelled;
+        }
+
+        /**
+         * Kill the process tree of the execution if it has not ended yet.
+         *
+         * @param termination how the execution ends
+         * @param gracePeriod the grace period in milliseconds before killing forcibly
+         * @return true if the process tree was killed
+         */
+        private boolean kill(Termination termination, long gracePeriod) {
+            if (execution.process() == null || !execution.end(termination)) {
+                return false;
+            }
+
+            ProcessTrees.kill(execution.process().toHandle(), gracePeriod);
+            return true;
+        }
+
+        /**
+         * Kill the process tree of the execution because the thread waiting on it was interrupted.
+         *
+         * @return the result of the execution
+         */
+        private ExecutionResult interrupt() {
+            if (kill(Termination.INTERRUPTED, getKillGracePeriod())) {
+                return execution.result(Termination.INTERRUPTED, -1);
+            }
+
+            ExecutionResult result = getNow(null);
+            return result != null ? result : execution.result(execution.termination(), -1);
+        }
+
+    }
+
+}
@@ -0,0 +1,39 @@
+package com.inspw.psexecj;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Kills processes together with all of the processes they spawned.
+ */
+final class ProcessTrees {
+
+    private ProcessTrees() {
+    }
+
+    /**
+     * Ask the given process and all of its descendants to terminate, then forcibly kill
+     * whichever of them are still alive once the grace period has passed.
+     * The descendants are collected up front, since they are reparented once their parent dies.
+     *
+     * @param process     the root of the process tree
+     * @param gracePeriod the grace period in milliseconds, or 0 to kill forcibly right away
+     */
+    static void kill(ProcessHandle process, long gracePeriod) {
+        List<ProcessHandle> tree = new ArrayList<>(process.descendants().collect(Collectors.toList()));
+        tree.add(process);
+
+        if (gracePeriod <= 0) {
+            tree.forEach(ProcessHandle::destroyForcibly);
+            return;
+        }
+
+        tree.forEach(ProcessHandle::destroy);
+        DeadlineScheduler.shared().schedule(() -> tree.stream()
+                .filter(ProcessHandle::isAlive)
+                .forEach(ProcessHandle::destroyForcibly), gracePeriod, TimeUnit.MILLISECONDS);
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.inspw.psexecj;
+
+import lombok.*;
+import lombok.experimental.Accessors;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+@Builder(builderMethodName = "prepare")
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@Accessors(fluent = true)
+@Getter
+public class RetryPolicy {
+
+    /**
+     * The maximum number of attempts, including the first one.
+     */
+    @Builder.Default
+    private final int maxAttempts = 3;
+
+    /**
+     * The backoff in milliseconds before the first retry.
+     */
+    @Builder.Default
+    private final long initialBackoff = 500;
+
+    /**
+     * The maximum backoff in milliseconds between two attempts.
+     */
+    @Builder.Default
+    private final long maxBackoff = 30_000;
+
+    /**
+     * The factor the backoff grows by after each retry.
+     */
+    @Builder.Default
+    private final double multiplier = 2;
+
+    /**
+     * The fraction of the backoff that is randomized, from 0 for none to 1 for a backoff
+     * anywhere between 0 and its full value.
+     */
+    @Builder.Default
+    private final double jitter = 1;
+
+    /**
+     * The time budget in milliseconds for all attempts together. No retry is scheduled that would
+     * start after the budget is spent, and an attempt still running when it is spent is cancelled,
+     * so each attempt runs for at most its own timeout or the remaining budget, whichever is shorter.
+     * Set to 0 for no budget.
+     */
+    @Builder.Default
+    private final long deadline = 0;
+
+    /**
+     * Decides whether an execution result is worth retrying.
+     */
+    @Builder.Default
+    @NonNull
+    private final Predicate<ExecutionResult> retryOn = RetryPolicy::isTransient;
+
+    /**
+     * Check whether the given result is a transient failure: the execution timed out, or PsExec could not reach
+     * the computer, reported as unreachable or by exiting with -1. A program that could not be spawned, such as
+     * a missing PsExec executable, fails the same way on every attempt and is not retried.
+     *
+     * @param result the execution result
+     * @return true if the failure is transient
+     */
+    public static boolean isTransient(ExecutionResult result) {
+        switch (result.termination()) {
+            case TIMED_OUT:
+            case UNREACHABLE:
+                return true;
+            case EXITED:
+                return result.exitCode() == -1;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Get the randomized backoff before the given retry.
+     *
+     * @param retry the number of the retry, starting at 1
+     * @return the backoff in milliseconds
+     */
+    long backoff(int retry) {
+        double backoff = Math.min(maxBackoff, initialBackoff * Math.pow(multiplier, retry - 1));
+        double jittered = backoff * (1 - jitter * ThreadLocalRandom.current().nextDouble());
+        return Math.max(0, (long) jittered);
+    }
+
+}
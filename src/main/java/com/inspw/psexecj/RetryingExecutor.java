@@ -0,0 +1,194 @@
+package com.inspw.psexecj;
+
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retries transient execution failures of another executor with exponential backoff and jitter.
+ * Retries wait on the shared timer instead of a sleeping thread, and stop once the time budget
+ * of the policy is spent, completing with the last result. The budget also bounds the running attempt:
+ * an attempt still running once the budget is spent is cancelled, and the execution completes as timed out.
+ */
+@Getter
+public class RetryingExecutor implements AsyncExecutor {
+
+    /**
+     * The executor running each attempt.
+     */
+    private final AsyncExecutor executor;
+
+    /**
+     * The retry policy.
+     */
+    private final RetryPolicy policy;
+
+    /**
+     * Create a retrying executor.
+     *
+     * @param executor the executor running each attempt
+     * @param policy   the retry policy
+     */
+    public RetryingExecutor(AsyncExecutor executor, RetryPolicy policy) {
+        this.executor = executor;
+        this.policy = policy;
+    }
+
+    /**
+     * Submit the given command, retrying it while its result is retryable. Cancelling the
+     * returned future cancels the running attempt or the pending retry.
+     *
+     * @param command  the command to execute
+     * @param computer the computer to target, or null to target the computers of the command
+     * @return the future result of the last attempt
+     */
+    @Override
+    public CompletableFuture<ExecutionResult> submit(Command command, String computer) {
+        Attempts attempts = new Attempts(command, computer);
+        attempts.run();
+        return attempts.result;
+    }
+
+    /**
+     * The attempts of one execution.
+     */
+    private class Attempts {
+
+        private final Command command;
+
+        private final String computer;
+
+        private final long startedAt = System.nanoTime();
+
+        private final CompletableFuture<ExecutionResult> result = new CompletableFuture<>();
+
+        private int attempt;
+
+        private volatile CompletableFuture<ExecutionResult> current;
+
+        private volatile DeadlineScheduler.Timeout retry;
+
+        private final DeadlineScheduler.Timeout budget;
+
+        private Attempts(Command command, String computer) {
+            this.command = command;
+            this.computer = computer;
+            this.budget = policy.deadline() > 0
+                    ? DeadlineScheduler.shared().schedule(this::expire, policy.deadline(), TimeUnit.MILLISECONDS)
+                    : null;
+
+            result.whenComplete((r, e) -> {
+                if (budget != null) {
+                    budget.cancel();
+                }
+
+                if (result.isCancelled()) {
+                    DeadlineScheduler.Timeout pending = retry;
+
+                    if (pending != null) {
+                        pending.cancel();
+                    }
+
+                    CompletableFuture<ExecutionResult> running = current;
+
+                    if (running != null) {
+                        running.cancel(true);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Start the next attempt.
+         */
+        private void run() {
+            if (result.isDone()) {
+                return;
+            }
+
+            attempt++;
+
+            CompletableFuture<ExecutionResult> running;
+
+            try {
+                running = executor.submit(command, computer);
+            } catch (RuntimeException e) {
+                running = CompletableFuture.failedFuture(e);
+            }
+
+            current = running;
+
+            if (result.isCancelled()) {
+                running.cancel(true);
+            }
+
+            running.whenComplete((r, e) -> {
+                if (e != null) {
+                    result.completeExceptionally(e);
+                } else if (!schedule(r) && !result.complete(r)) {
+                    // The budget was spent or the execution cancelled, so nobody reads this result.
+                    r.release();
+                }
+            });
+        }
+
+        /**
+         * Complete the execution as timed out once the time budget is spent, cancelling the running attempt
+         * or the pending retry.
+         */
+        private void expire() {
+            Duration wallTime = Duration.ofNanos(System.nanoTime() - startedAt);
+
+            if (!result.complete(new ExecutionResult(-1, Termination.TIMED_OUT, -1, Duration.ZERO, wallTime,
+                    null, null, null))) {
+                return;
+            }
+
+            DeadlineScheduler.Timeout pending = retry;
+
+            if (pending != null) {
+                pending.cancel();
+            }
+
+            CompletableFuture<ExecutionResult> running = current;
+
+            if (running != null) {
+                running.cancel(true);
+            }
+        }
+
+        /**
+         * Schedule a retry of the given result if it is retryable and the attempts and time budget allow it,
+         * releasing the result it supersedes.
+         *
+         * @param last the result of the last attempt
+         * @return true if a retry was scheduled
+         */
+        private boolean schedule(ExecutionResult last) {
+            if (result.isDone() || attempt >= policy.maxAttempts() || !policy.retryOn().test(last)) {
+                return false;
+            }
+
+            long backoff = policy.backoff(attempt);
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+
+            if (policy.deadline() > 0 && elapsed + backoff >= policy.deadline()) {
+                return false;
+            }
+
+            // The retry supersedes the result, so nobody reads its captured output.
+            last.release();
+            retry = DeadlineScheduler.shared().schedule(this::run, backoff, TimeUnit.MILLISECONDS);
+
+            if (result.isCancelled()) {
+                retry.cancel();
+            }
+
+            return true;
+        }
+
+    }
+
+}
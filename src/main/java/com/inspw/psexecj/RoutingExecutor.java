@@ -0,0 +1,44 @@
+package com.inspw.psexecj;
+
+import lombok.Getter;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs the commands its local executor accepts directly on this computer, and all other commands
+ * through another executor, usually PsExec.
+ */
+@Getter
+public class RoutingExecutor implements AsyncExecutor {
+
+    /**
+     * The executor running the commands targeting the local computer.
+     */
+    private final LocalExecutor local;
+
+    /**
+     * The executor running all other commands.
+     */
+    private final AsyncExecutor remote;
+
+    /**
+     * Create a routing executor.
+     *
+     * @param local  the executor running the commands targeting the local computer
+     * @param remote the executor running all other commands
+     */
+    public RoutingExecutor(LocalExecutor local, AsyncExecutor remote) {
+        this.local = local;
+        this.remote = remote;
+    }
+
+    @Override
+    public CompletableFuture<ExecutionResult> submit(Command command, String computer) {
+        if (local.getTransport().accepts(command, computer)) {
+            return local.submit(command, computer);
+        }
+
+        return remote.submit(command, computer);
+    }
+
+}
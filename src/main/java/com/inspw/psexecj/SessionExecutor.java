@@ -0,0 +1,611 @@
+package com.inspw.psexecj;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs commands through long-lived PsExec processes, one per computer, each running a remote shell.
+ * Commands are pipelined into the standard input of the shell, and the output of each command is framed by
+ * a marker printed with its exit code, which saves the cost of setting up PsExec for every command.
+ * Sessions are started on demand and closed once idle.
+ *
+ * The shell runs with its error output merged into its standard output, so the output of each command is
+ * delivered to its output sink as {@link OutputSource#STDOUT}. Commands targeting several computers, and commands
+ * with options PsExec applies to the process it starts, such as copying, detaching, priority or processors,
+ * are not run in sessions, but passed to the underlying executor, as those options would apply to the shell.
+ */
+@Getter
+@Setter
+public class SessionExecutor implements AsyncExecutor, AutoCloseable {
+
+    /**
+     * The executor whose settings are used to start sessions, and which runs commands not fitting a session.
+     * Its execute timeout applies to each command run in a session; a command reaching it ends its session.
+     */
+    @Setter(AccessLevel.NONE)
+    private final BinaryExecutableExecutor executor;
+
+    /**
+     * The syntax of the shell run by each session.
+     */
+    @Setter(AccessLevel.NONE)
+    private final ShellDialect dialect;
+
+    /**
+     * The time in milliseconds after which a session without running commands is closed.
+     */
+    private long idleTimeout = 60_000;
+
+    /**
+     * The charset of the shell input and output.
+     */
+    private Charset charset = Charset.defaultCharset();
+
+    /**
+     * The size in bytes of the buffer splitting the output of a shell into lines.
+     */
+    static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    /**
+     * The maximum number of bytes following the token of a marker up to its newline:
+     * the sequence number, the exit code and their separators.
+     */
+    private static final int MAX_MARKER_SUFFIX = 48;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final ConcurrentHashMap<List<Object>, Session> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * Create a session executor.
+     *
+     * @param executor the executor whose settings are used to start sessions
+     * @param dialect  the syntax of the shell run by each session
+     */
+    public SessionExecutor(BinaryExecutableExecutor executor, ShellDialect dialect) {
+        this.executor = executor;
+        this.dialect = dialect;
+    }
+
+    /**
+     * Get the number of open sessions.
+     *
+     * @return the number of sessions
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Submit the given command to the session of its computer, starting the session if needed.
+     * Cancelling the returned future does not stop the command, whose output is then discarded.
+     *
+     * @param command  the command to execute
+     * @param computer the computer to target, or null to target the computer of the command
+     * @return the future result of the execution
+     */
+    @Override
+    public CompletableFuture<ExecutionResult> submit(Command command, String computer) {
+        if (computer == null && (command.computers().size() > 1 || !command.hostSets().isEmpty()
+                || command.computerListFile() != null)) {
+            return executor.submit(command, null);
+        }
+
+        if (!fitsSession(command)) {
+            return executor.submit(command, computer);
+        }
+
+        String host = computer != null ? computer : command.computers().isEmpty() ? null : command.computers().get(0);
+        String[] shell = dialect.shell();
+        Command sessionCommand = command.withCmd(shell[0], Arrays.copyOfRange(shell, 1, shell.length));
+        List<Object> key = sessionCommand.fingerprint(host);
+        Request request = new Request(command);
+
+        while (true) {
+            Session session = sessions.get(key);
+
+            if (session == null) {
+                try {
+                    session = new Session(key, sessionCommand, host);
+                } catch (IOException | RuntimeException e) {
+                    return CompletableFuture.completedFuture(ExecutionResult.failed(e));
+                }
+
+                Session existing = sessions.putIfAbsent(key, session);
+
+                if (existing != null) {
+                    session.close();
+                    session = existing;
+                }
+            }
+
+            if (session.send(request)) {
+                return request.result;
+            }
+
+            sessions.remove(key, session);
+        }
+    }
+
+    /**
+     * Check whether the given command has no options PsExec would apply to the shell of a session
+     * instead of the command itself.
+     *
+     * @param command the command to check
+     * @return true if the command may run in a session
+     */
+    private static boolean fitsSession(Command command) {
+        return !command.copy() && command.copyOverride() == Command.COPY_OVERRIDE_NEVER && !command.detach()
+                && command.priority() == Command.PRIORITY_NORMAL && command.processors() == null;
+    }
+
+    /**
+     * Close all sessions. Commands still running in them complete as failed.
+     */
+    @Override
+    public void close() {
+        sessions.values().forEach(Session::close);
+    }
+
+    /**
+     * A command waiting for its result in a session.
+     */
+    private static class Request {
+
+        private final Command command;
+
+        private final long submittedAt = System.nanoTime();
+
+        private final CompletableFuture<ExecutionResult> result = new CompletableFuture<>();
+
+        private OutputStream output;
+
+        private DeadlineScheduler.Timeout timeout;
+
+        /**
+         * The sequence number of the marker ending the output of the command.
+         */
+        private long sequence;
+
+        private Request(Command command) {
+            this.command = command;
+        }
+
+        /**
+         * Deliver output of the command to its output sink, unless it is discarded.
+         * A failing output sink fails the command, whose remaining output is then skipped up to its marker.
+         */
+        private void write(byte[] buffer, int offset, int length) {
+            if (length == 0 || command == null || command.outputSink() == OutputSink.DISCARD || result.isDone()) {
+                return;
+            }
+
+            try {
+                if (output == null) {
+                    output = command.outputSink().open(command, OutputSource.STDOUT);
+                }
+
+                output.write(buffer, offset, length);
+            } catch (IOException | RuntimeException e) {
+                result.complete(ExecutionResult.failed(e));
+            }
+        }
+
+        private void closeOutput() {
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException | RuntimeException e) {
+                    // The command already has its result.
+                }
+            }
+        }
+
+    }
+
+    /**
+     * A shell kept running through PsExec against one computer.
+     */
+    private class Session {
+
+        private final List<Object> key;
+
+        private final Process process;
+
+        private final OutputStream input;
+
+        /**
+         * The marker prefix, unique to the session, preceding the sequence number of each command.
+         */
+        private final String token = "PSEXECJ" + UUID.randomUUID().toString().replace("-", "");
+
+        private final byte[] tokenBytes = token.getBytes(StandardCharsets.US_ASCII);
+
+        /**
+         * The commands sent to the shell that have not printed their marker yet, in order.
+         */
+        private final Queue<Request> pending = new ConcurrentLinkedQueue<>();
+
+        private long sequence;
+
+        private volatile long lastUsed = System.nanoTime();
+
+        private boolean closed;
+
+        private Session(List<Object> key, Command sessionCommand, String host) throws IOException {
+            this.key = key;
+
+            CommandTemplate template = executor.compile(sessionCommand);
+            ProcessBuilder builder = new ProcessBuilder(host != null ? template.craft(host) : template.craft());
+            builder.redirectErrorStream(true);
+            this.process = builder.start();
+            this.input = process.getOutputStream();
+
+            // Discard whatever the shell prints before the first marker, such as banners.
+            Request handshake = new Request(null);
+            pending.add(handshake);
+            write(dialect.status(marker(sequence)));
+
+            OutputDrainer.drain(process.getInputStream(), new FramingOutputStream())
+                    .whenComplete((v, e) -> ended());
+        }
+
+        private String marker(long sequence) {
+            return token + ":" + sequence;
+        }
+
+        /**
+         * Send a command to the shell.
+         *
+         * @param request the command to send
+         * @return false if the session is closed
+         */
+        private synchronized boolean send(Request request) {
+            if (closed) {
+                return false;
+            }
+
+            lastUsed = System.nanoTime();
+            request.sequence = ++sequence;
+            pending.add(request);
+
+            Command command = request.command;
+            String[] commandLine = new String[1 + (command.arguments() == null ? 0 : command.arguments().length)];
+            commandLine[0] = command.cmd();
+
+            if (command.arguments() != null) {
+                System.arraycopy(command.arguments(), 0, commandLine, 1, command.arguments().length);
+            }
+
+            if (!write(dialect.run(commandLine) + dialect.status(marker(request.sequence)))) {
+                // The session is ending, which fails the pending commands.
+                return true;
+            }
+
+            if (pending.peek() == request) {
+                started(request);
+            }
+
+            return true;
+        }
+
+        /**
+         * Write to the shell, killing the session if it can no longer be written to.
+         *
+         * @return true if the input was written
+         */
+        private boolean write(String text) {
+            try {
+                input.write(text.getBytes(charset));
+                input.flush();
+                return true;
+            } catch (IOException e) {
+                closed = true;
+                process.destroyForcibly();
+                return false;
+            }
+        }
+
+        /**
+         * Start the timeout of a command once it reached the head of the queue, and so started running.
+         *
+         * @param request the command that started running
+         */
+        private synchronized void started(Request request) {
+            long timeout = executor.getExecuteTimeout();
+
+            if (timeout > 0 && request.command != null && request.timeout == null) {
+                request.timeout = DeadlineScheduler.shared().schedule(() -> expire(request),
+                        timeout, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /**
+         * Complete a command that reached its timeout, fail the commands queued behind it,
+         * and kill the session it is blocking.
+         */
+        private void expire(Request request) {
+            if (request.result.complete(new ExecutionResult(-1, Termination.TIMED_OUT, process.pid(),
+                    Duration.ZERO, Duration.ofNanos(System.nanoTime() - request.submittedAt), null, null, null))) {
+                ended();
+                ProcessTrees.kill(process.toHandle(), executor.getKillGracePeriod());
+            }
+        }
+
+        /**
+         * Complete the oldest pending command with the exit code printed with its marker.
+         */
+        private void completed(int exitCode) {
+            Request request = pending.poll();
+
+            if (request == null) {
+                return;
+            }
+
+            request.closeOutput();
+
+            synchronized (this) {
+                if (request.timeout != null) {
+                    request.timeout.cancel();
+                }
+
+                Request next = pending.peek();
+
+                if (next != null) {
+                    started(next);
+                }
+            }
+
+            if (request.command != null) {
+                request.result.complete(new ExecutionResult(exitCode, Termination.EXITED, process.pid(),
+                        Duration.ZERO, Duration.ofNanos(System.nanoTime() - request.submittedAt), null, null, null));
+            }
+
+            if (pending.isEmpty()) {
+                lastUsed = System.nanoTime();
+                DeadlineScheduler.shared().schedule(this::evictIfIdle, idleTimeout, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void evictIfIdle() {
+            synchronized (this) {
+                if (closed || !pending.isEmpty()
+                        || System.nanoTime() - lastUsed < TimeUnit.MILLISECONDS.toNanos(idleTimeout)) {
+                    return;
+                }
+            }
+
+            close();
+        }
+
+        /**
+         * Ask the shell to exit, killing it if it does not exit within the kill grace period.
+         */
+        private void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+
+                closed = true;
+            }
+
+            sessions.remove(key, this);
+
+            if (write(dialect.exit())) {
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    // The shell is killed below if it does not exit.
+                }
+            }
+
+            DeadlineScheduler.shared().schedule(() -> {
+                if (process.isAlive()) {
+                    ProcessTrees.kill(process.toHandle(), 0);
+                }
+            }, executor.getKillGracePeriod(), TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Close the session and fail the commands left, once the output of the shell ended or a command timed out.
+         */
+        private void ended() {
+            synchronized (this) {
+                closed = true;
+            }
+
+            sessions.remove(key, this);
+
+            List<Request> left = new ArrayList<>();
+            Request request;
+
+            while ((request = pending.poll()) != null) {
+                left.add(request);
+            }
+
+            for (Request r : left) {
+                r.closeOutput();
+
+                if (r.timeout != null) {
+                    r.timeout.cancel();
+                }
+
+                r.result.complete(ExecutionResult.failed(new IOException("Session ended")));
+            }
+        }
+
+        /**
+         * Splits the output of the shell into lines, delivering each to the oldest pending command
+         * until the marker of that command is found. Only a marker carrying the sequence number of that command
+         * and followed by an exit code ends it, so that marker text echoed by a command is delivered as output.
+         * Lines longer than {@link #MAX_LINE_LENGTH} are delivered in parts, keeping back only the bytes a marker
+         * could start in.
+         */
+        private class FramingOutputStream extends OutputStream {
+
+            private final byte[] line = new byte[MAX_LINE_LENGTH];
+
+            private int length;
+
+            @Override
+            public void write(int b) {
+                if (length == line.length) {
+                    overflow();
+                }
+
+                line[length++] = (byte) b;
+
+                if (b == '\n') {
+                    frame();
+                    length = 0;
+                }
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                int end = off + len;
+
+                for (int i = off; i < end; i++) {
+                    write(b[i]);
+                }
+            }
+
+            @Override
+            public void close() {
+                Request request = pending.peek();
+
+                if (request != null) {
+                    request.write(line, 0, length);
+                }
+            }
+
+            /**
+             * Deliver the start of a line that filled the buffer without a newline. A marker is followed by its
+             * newline within a few bytes, so only the bytes a marker could start in are kept back.
+             */
+            private void overflow() {
+                int kept = Math.min(length, tokenBytes.length + MAX_MARKER_SUFFIX);
+                Request request = pending.peek();
+
+                if (request != null) {
+                    request.write(line, 0, length - kept);
+                }
+
+                System.arraycopy(line, length - kept, line, 0, kept);
+                length = kept;
+            }
+
+            private void frame() {
+                Request request = pending.peek();
+                int marker = request == null ? -1 : indexOfMarker(request.sequence);
+
+                if (marker < 0) {
+                    if (request != null) {
+                        request.write(line, 0, length);
+                    }
+
+                    return;
+                }
+
+                request.write(line, 0, marker);
+                completed(parseExitCode(marker + tokenBytes.length));
+            }
+
+            /**
+             * Find the marker of the given sequence number followed by an exit code, as in "TOKEN:12 0".
+             *
+             * @param sequence the sequence number of the oldest pending command
+             * @return the position of the marker, or -1 if the line holds none
+             */
+            private int indexOfMarker(long sequence) {
+                for (int i = indexOfToken(0); i >= 0; i = indexOfToken(i + 1)) {
+                    int j = i + tokenBytes.length;
+
+                    if (j >= length || line[j++] != ':') {
+                        continue;
+                    }
+
+                    long number = 0;
+                    int digits = j;
+
+                    while (j < length && line[j] >= '0' && line[j] <= '9') {
+                        number = number * 10 + (line[j++] - '0');
+                    }
+
+                    if (j == digits || number != sequence || j + 1 >= length || line[j] != ' ') {
+                        continue;
+                    }
+
+                    byte first = line[j + 1];
+
+                    if (first == '-' || first >= '0' && first <= '9') {
+                        return i;
+                    }
+                }
+
+                return -1;
+            }
+
+            private int indexOfToken(int from) {
+                outer:
+                for (int i = from, last = length - tokenBytes.length; i <= last; i++) {
+                    for (int j = 0; j < tokenBytes.length; j++) {
+                        if (line[i + j] != tokenBytes[j]) {
+                            continue outer;
+                        }
+                    }
+
+                    return i;
+                }
+
+                return -1;
+            }
+
+            /**
+             * Parse the exit code following the sequence number of a marker, as in ":12 0".
+             */
+            private int parseExitCode(int from) {
+                int i = from;
+
+                while (i < length && line[i] != ' ') {
+                    i++;
+                }
+
+                i++;
+                boolean negative = i < length && line[i] == '-';
+
+                if (negative) {
+                    i++;
+                }
+
+                long exitCode = 0;
+
+                while (i < length && line[i] >= '0' && line[i] <= '9') {
+                    exitCode = exitCode * 10 + (line[i++] - '0');
+                }
+
+                return (int) (negative ? -exitCode : exitCode);
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,99 @@
+package com.inspw.psexecj;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * The syntax of a shell kept running by a {@link SessionExecutor}, used to run commands through its standard input
+ * and to print a marker with the exit code of each command once it finished.
+ */
+public interface ShellDialect {
+
+    /**
+     * The POSIX shell, as /bin/sh.
+     */
+    ShellDialect SH = new ShellDialect() {
+        @Override
+        public String[] shell() {
+            return new String[]{"/bin/sh"};
+        }
+
+        @Override
+        public String run(String[] commandLine) {
+            return Arrays.stream(commandLine)
+                    .map(token -> "'" + token.replace("'", "'\\''") + "'")
+                    .collect(Collectors.joining(" ", "", " </dev/null\n"));
+        }
+
+        @Override
+        public String status(String marker) {
+            return "echo \"" + marker + " $?\"\n";
+        }
+
+        @Override
+        public String exit() {
+            return "exit\n";
+        }
+    };
+
+    /**
+     * The Windows command interpreter, as cmd.exe with echo turned off.
+     */
+    ShellDialect CMD = new ShellDialect() {
+        @Override
+        public String[] shell() {
+            return new String[]{"cmd.exe", "/Q"};
+        }
+
+        @Override
+        public String run(String[] commandLine) {
+            return Arrays.stream(commandLine)
+                    .map(token -> token.isEmpty() || token.matches(".*[\\s&|<>^()\"].*")
+                            ? "\"" + token.replace("\"", "\"\"") + "\""
+                            : token)
+                    .collect(Collectors.joining(" ", "", " <NUL\r\n"));
+        }
+
+        @Override
+        public String status(String marker) {
+            return "echo " + marker + " %ERRORLEVEL%\r\n";
+        }
+
+        @Override
+        public String exit() {
+            return "exit\r\n";
+        }
+    };
+
+    /**
+     * Get the program and arguments starting the shell.
+     *
+     * @return the program followed by its arguments
+     */
+    String[] shell();
+
+    /**
+     * Get the input running the given command line, with its standard input closed so that it cannot read
+     * the following input of the shell.
+     *
+     * @param commandLine the program to run followed by its arguments
+     * @return the input running the command, ending with a line terminator
+     */
+    String run(String[] commandLine);
+
+    /**
+     * Get the input printing the given marker, a space and the exit code of the last command on a line.
+     *
+     * @param marker the marker, made of letters, digits and colons
+     * @return the input printing the marker, ending with a line terminator
+     */
+    String status(String marker);
+
+    /**
+     * Get the input exiting the shell.
+     *
+     * @return the input exiting the shell, ending with a line terminator
+     */
+    String exit();
+
+}
@@ -0,0 +1,106 @@
+package com.inspw.psexecj;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+/**
+ * Iterates over the computers of a command followed by the hosts of its host sets, expanding one host set at a time.
+ * Closing the iterator before the end closes the host set being expanded, such as a host file still being read.
+ */
+final class TargetIterator implements Iterator<String>, Closeable {
+
+    private final Iterator<String> computers;
+
+    private final Iterator<HostSet> hostSets;
+
+    private final Predicate<String> filter;
+
+    private Iterator<String> current;
+
+    private String next;
+
+    private boolean closed;
+
+    /**
+     * Create an iterator over the targets of a command.
+     *
+     * @param computers the computers of the command
+     * @param hostSets  the host sets of the command
+     * @param filter    the filter the targets must pass to be iterated
+     */
+    TargetIterator(List<String> computers, List<HostSet> hostSets, Predicate<String> filter) {
+        this.computers = computers.iterator();
+        this.hostSets = hostSets.iterator();
+        this.filter = filter;
+        this.current = this.computers;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) {
+            return true;
+        }
+
+        while (!closed) {
+            if (current.hasNext()) {
+                String target = current.next();
+
+                if (filter.test(target)) {
+                    next = target;
+                    return true;
+                }
+
+                continue;
+            }
+
+            close(current);
+            current = hostSets.hasNext() ? hostSets.next().iterator() : null;
+
+            if (current == null) {
+                closed = true;
+                current = Collections.emptyIterator();
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        String target = next;
+        next = null;
+        return target;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        next = null;
+        close(current);
+    }
+
+    private static void close(Iterator<String> iterator) {
+        if (iterator instanceof Closeable) {
+            try {
+                ((Closeable) iterator).close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.inspw.psexecj;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Stream writing every byte to two streams. Both streams are closed even if one of them fails.
+ */
+class TeeOutputStream extends OutputStream {
+
+    private final OutputStream first;
+
+    private final OutputStream second;
+
+    /**
+     * Create a stream writing to both given streams, in order.
+     *
+     * @param first  the first stream
+     * @param second the second stream
+     */
+    TeeOutputStream(OutputStream first, OutputStream second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        first.write(b);
+        second.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        first.write(b, off, len);
+        second.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        first.flush();
+        second.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            first.close();
+        } finally {
+            second.close();
+        }
+    }
+
+}
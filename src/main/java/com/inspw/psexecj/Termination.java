@@ -0,0 +1,45 @@
+package com.inspw.psexecj;
+
+public enum Termination {
+
+    /**
+     * The program exited on its own with an exit code.
+     */
+    EXITED,
+
+    /**
+     * The program was killed after reaching the execution timeout.
+     */
+    TIMED_OUT,
+
+    /**
+     * The thread waiting on the program was interrupted.
+     */
+    INTERRUPTED,
+
+    /**
+     * The program was killed before exiting on its own.
+     */
+    KILLED,
+
+    /**
+     * The program could not be spawned.
+     */
+    SPAWN_FAILED,
+
+    /**
+     * The execution was rejected before its program was spawned, e.g. because the executor was shut down.
+     */
+    REJECTED,
+
+    /**
+     * PsExec reported that it could not reach the computer, in the output of a multi-computer invocation.
+     */
+    UNREACHABLE,
+
+    /**
+     * A multi-computer invocation exited without reporting the outcome of the computer.
+     */
+    UNREPORTED
+
+}
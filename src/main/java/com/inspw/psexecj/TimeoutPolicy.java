@@ -0,0 +1,27 @@
+package com.inspw.psexecj;
+
+/**
+ * Decides the timeout of each execution, optionally learning from the results of past executions.
+ * Implementations must be thread-safe.
+ */
+public interface TimeoutPolicy {
+
+    /**
+     * Get the timeout of an execution about to start.
+     *
+     * @param command        the command to execute, targeting a single computer or the local computer
+     * @param executeTimeout the timeout in milliseconds configured on the executor, 0 for none
+     * @return the timeout in milliseconds, 0 for none
+     */
+    long timeout(Command command, long executeTimeout);
+
+    /**
+     * Record the result of a finished execution.
+     *
+     * @param command the command that was executed
+     * @param result  the result of the execution
+     */
+    default void record(Command command, ExecutionResult result) {
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.inspw.psexecj;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket, implemented as the generic cell rate algorithm over a single atomic timestamp.
+ */
+final class TokenBucket {
+
+    /**
+     * The time in nanoseconds between two tokens.
+     */
+    private final long interval;
+
+    /**
+     * How far ahead of the current time the theoretical arrival time may run before requests must wait.
+     */
+    private final long tolerance;
+
+    /**
+     * The theoretical arrival time of the next request, relative to {@link System#nanoTime()}.
+     */
+    private final AtomicLong arrival = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * Create a token bucket.
+     *
+     * @param rate  the number of tokens added per second
+     * @param burst the maximum number of tokens held at once
+     */
+    TokenBucket(double rate, int burst) {
+        this.interval = Math.max(1, (long) (1_000_000_000L / rate));
+        this.tolerance = interval * (Math.max(1, burst) - 1);
+    }
+
+    /**
+     * Take a token if one is available.
+     *
+     * @return 0 if a token was taken, otherwise the time in nanoseconds until one becomes available
+     */
+    long tryAcquire() {
+        while (true) {
+            long now = System.nanoTime();
+            long current = arrival.get();
+            long next = current == Long.MIN_VALUE || current - now < 0 ? now : current;
+            long wait = next - now - tolerance;
+
+            if (wait > 0) {
+                return wait;
+            }
+
+            if (arrival.compareAndSet(current, next + interval)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Check whether the bucket holds all of its tokens, so that replacing it with a new bucket changes nothing.
+     *
+     * @return true if the bucket is full
+     */
+    boolean isFull() {
+        long current = arrival.get();
+        return current == Long.MIN_VALUE || current - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Give back a token taken with {@link #tryAcquire()} that ended up unused.
+     */
+    void refund() {
+        arrival.addAndGet(-interval);
+    }
+
+}
@@ -0,0 +1,27 @@
+package com.inspw.psexecj;
+
+/**
+ * The way a {@link LocalExecutor} spawns the process of a command, without going through PsExec.
+ */
+public interface Transport {
+
+    /**
+     * Check whether the given command can be run through this transport.
+     *
+     * @param command  the command to run
+     * @param computer the computer to target, or null to target the computers of the command
+     * @return true if the command can be run
+     */
+    boolean accepts(Command command, String computer);
+
+    /**
+     * Prepare the process running the given command.
+     *
+     * @param command  the command to run
+     * @param computer the computer to target, or null to target the computers of the command
+     * @return the process builder of the command
+     * @throws IllegalArgumentException if the command is not accepted by this transport
+     */
+    ProcessBuilder prepare(Command command, String computer);
+
+}
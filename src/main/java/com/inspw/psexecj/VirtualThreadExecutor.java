@@ -0,0 +1,164 @@
+package com.inspw.psexecj;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the blocking executions of another executor on virtual threads, so that tens of thousands
+ * of executions can wait at the same time while keeping the simple blocking {@link Executor} API.
+ * On JDKs without virtual threads, new platform threads are used instead.
+ */
+@Getter
+public class VirtualThreadExecutor implements Executor, AsyncExecutor {
+
+    private static final ExecutorService SHARED = VirtualThreads.newPerTaskExecutor();
+
+    /**
+     * The executor running the executions.
+     */
+    private final Executor executor;
+
+    /**
+     * Create an executor running the executions of the given executor on virtual threads.
+     *
+     * @param executor the executor running the executions
+     */
+    public VirtualThreadExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Check whether executions actually run on virtual threads in the running JDK.
+     *
+     * @return true if virtual threads are available
+     */
+    public static boolean isVirtual() {
+        return VirtualThreads.isAvailable();
+    }
+
+    /**
+     * Execute the given command on the calling thread. Call this from a virtual thread to wait cheaply.
+     *
+     * @param command the command to execute
+     * @return the result of the execution
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public ExecutionResult execute(Command command) throws IOException {
+        return executor.execute(command);
+    }
+
+    /**
+     * Submit the given command for execution on a virtual thread of its own.
+     * Cancelling the returned future interrupts that thread, which kills the process tree of a running execution
+     * of a {@link ProcessExecutor}.
+     *
+     * @param command  the command to execute
+     * @param computer the computer to target, or null to target the computers of the command
+     * @return the future result of the execution
+     */
+    @Override
+    public CompletableFuture<ExecutionResult> submit(Command command, String computer) {
+        Command target = computer == null ? command : command.withTarget(computer, null);
+        CompletableFuture<ExecutionResult> result = new CompletableFuture<>();
+
+        Future<?> task = SHARED.submit(() -> {
+            if (result.isDone()) {
+                return;
+            }
+
+            try {
+                ExecutionResult r = executor.execute(target);
+
+                if (!result.complete(r)) {
+                    r.release();
+                }
+            } catch (IOException e) {
+                result.completeExceptionally(new UncheckedIOException(e));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        result.whenComplete((r, e) -> {
+            if (result.isCancelled()) {
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Execute all of the given commands at the same time, each on its own virtual thread, and wait for all of them.
+     * The executions are scoped to this call: as soon as one of them fails or the calling thread is interrupted,
+     * the remaining executions are interrupted, and this method only returns once all of them have ended.
+     *
+     * @param commands the commands to execute
+     * @return the result of each command, in the order of the given commands
+     * @throws IOException          if an I/O error occurs in any of the executions
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public List<ExecutionResult> executeAll(Collection<Command> commands) throws IOException, InterruptedException {
+        ExecutorService scope = VirtualThreads.newPerTaskExecutor();
+
+        try {
+            CompletionService<ExecutionResult> completion = new ExecutorCompletionService<>(scope);
+            ExecutionResult[] results = new ExecutionResult[commands.size()];
+            int index = 0;
+
+            for (Command command : commands) {
+                int i = index++;
+                completion.submit(() -> results[i] = executor.execute(command));
+            }
+
+            // Waiting in the order the executions end sees the first failure as soon as it happens.
+            for (int i = 0; i < results.length; i++) {
+                completion.take().get();
+            }
+
+            return Arrays.asList(results);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+
+            throw new IOException(cause);
+        } finally {
+            scope.shutdownNow();
+
+            boolean interrupted = false;
+
+            while (true) {
+                try {
+                    if (scope.awaitTermination(1, TimeUnit.DAYS)) {
+                        break;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.inspw.psexecj;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to virtual threads, which are looked up at runtime so the library still runs on JDKs without them.
+ * On those JDKs, new daemon platform threads are used instead.
+ */
+final class VirtualThreads {
+
+    private static final Method NEW_PER_TASK_EXECUTOR = lookup();
+
+    private VirtualThreads() {
+    }
+
+    private static Method lookup() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Check whether the running JDK supports virtual threads.
+     *
+     * @return true if virtual threads are available
+     */
+    static boolean isAvailable() {
+        return NEW_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Create an executor service starting a new virtual thread for each task,
+     * or a new daemon platform thread if virtual threads are not available.
+     *
+     * @return the executor service
+     */
+    static ExecutorService newPerTaskExecutor() {
+        if (NEW_PER_TASK_EXECUTOR != null) {
+            try {
+                return (ExecutorService) NEW_PER_TASK_EXECUTOR.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Unable to create a virtual thread executor", e);
+            }
+        }
+
+        return Executors.newCachedThreadPool(CompletionPool.daemonThreadFactory("psexecj-worker-"));
+    }
+
+}
@@ -0,0 +1,135 @@
+package com.inspw.psexecj;
+
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveTimeoutPolicyTest {
+
+    private static ExecutionResult exitedAfter(long millis) {
+        return new ExecutionResult(0, Termination.EXITED, 1, Duration.ZERO, Duration.ofMillis(millis), null, null, null);
+    }
+
+    private static Command command(String cmd, String computer) {
+        return Command.prepare().cmd(cmd).computer(computer).build();
+    }
+
+    @Test
+    public void timeout_ReturnsExecuteTimeout_GivenTooFewSamples() {
+        AdaptiveTimeoutPolicy policy = AdaptiveTimeoutPolicy.prepare().minSamples(5).build();
+
+        policy.record(command("dir", "a"), exitedAfter(100));
+
+        assertEquals(30_000, policy.timeout(command("dir", "a"), 30_000));
+        assertEquals(policy.ceiling(), policy.timeout(command("dir", "a"), 0));
+    }
+
+    @Test
+    public void timeout_AdaptsPerHost_GivenObservedLatencies() {
+        AdaptiveTimeoutPolicy policy = AdaptiveTimeoutPolicy.prepare()
+                .minSamples(10)
+                .multiplier(2)
+                .floor(100)
+                .build();
+
+        for (int i = 0; i < 10; i++) {
+            policy.record(command("dir", "lan"), exitedAfter(1_000));
+            policy.record(command("ipconfig", "wan"), exitedAfter(20_000));
+        }
+
+        long lan = policy.timeout(command("hostname", "lan"), 0);
+        long wan = policy.timeout(command("hostname", "wan"), 0);
+
+        assertTrue(lan >= 2_000 && lan < 2_500);
+        assertTrue(wan >= 40_000 && wan < 50_000);
+    }
+
+    @Test
+    public void timeout_PrefersHost_GivenHostAndCommandSampled() {
+        AdaptiveTimeoutPolicy policy = AdaptiveTimeoutPolicy.prepare().minSamples(1).multiplier(1).floor(0).build();
+
+        policy.record(command("backup", "wan"), exitedAfter(60_000));
+        policy.record(command("dir", "lan"), exitedAfter(500));
+
+        long lan = policy.timeout(command("backup", "lan"), 0);
+        assertTrue(lan >= 500 && lan < 600);
+    }
+
+    @Test
+    public void timeout_FallsBackToCommand_GivenTooFewHostSamples() {
+        AdaptiveTimeoutPolicy policy = AdaptiveTimeoutPolicy.prepare().minSamples(1).multiplier(1).floor(0).build();
+
+        policy.record(command("backup", "a"), exitedAfter(60_000));
+
+        assertTrue(policy.timeout(command("backup", "b"), 0) >= 60_000);
+    }
+
+    @Test
+    public void timeout_DoesNotGrow_GivenRepeatedTimeouts() {
+        AdaptiveTimeoutPolicy policy = AdaptiveTimeoutPolicy.prepare().minSamples(10).floor(0).build();
+        Command command = command("dir", "hung");
+
+        for (int i = 0; i < 20; i++) {
+            policy.record(command, exitedAfter(1_000));
+        }
+
+        for (int i = 0; i < 20; i++) {
+            long timeout = policy.timeout(command, 0);
+            policy.record(command, new ExecutionResult(-1, Termination.TIMED_OUT, 1, Duration.ZERO,
+                    Duration.ofMillis(timeout), null, null, null));
+        }
+
+        assertTrue(policy.timeout(command, 0) <= 3_500);
+    }
+
+    @Test
+    public void timeout_StaysWithinBounds_GivenExtremeLatencies() {
+        AdaptiveTimeoutPolicy policy = AdaptiveTimeoutPolicy.prepare()
+                .minSamples(1)
+                .floor(5_000)
+                .ceiling(60_000)
+                .build();
+
+        policy.record(command("dir", "fast"), exitedAfter(1));
+        policy.record(command("backup", "slow"), exitedAfter(3_600_000));
+
+        assertEquals(5_000, policy.timeout(command("other", "fast"), 0));
+        assertEquals(60_000, policy.timeout(command("other", "slow"), 0));
+    }
+
+    @Test
+    public void timeout_IgnoresLatencies_GivenSeveralComputers() {
+        AdaptiveTimeoutPolicy policy = AdaptiveTimeoutPolicy.prepare().minSamples(1).multiplier(1).floor(0).build();
+        Command fleet = Command.prepare().cmd("dir").computer("a").computer("b").build();
+
+        policy.record(fleet, exitedAfter(60_000));
+        policy.record(command("dir", "lan"), exitedAfter(500));
+
+        assertEquals(30_000, policy.timeout(fleet, 30_000));
+        long other = policy.timeout(command("dir", "other"), 0);
+        assertTrue(other >= 500 && other < 600);
+    }
+
+    @Test
+    public void timeout_ForgetsLeastRecentHosts_GivenCapacityReached() {
+        AdaptiveTimeoutPolicy policy = AdaptiveTimeoutPolicy.prepare()
+                .minSamples(1)
+                .multiplier(1)
+                .floor(0)
+                .percentile(50)
+                .capacity(4)
+                .build();
+
+        policy.record(command("dir", "slow"), exitedAfter(60_000));
+
+        for (int i = 0; i < 9; i++) {
+            policy.record(command("dir", "fast" + i), exitedAfter(500));
+        }
+
+        long slow = policy.timeout(command("dir", "slow"), 0);
+        assertTrue(slow >= 500 && slow < 600);
+    }
+
+}
@@ -0,0 +1,165 @@
+package com.inspw.psexecj;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.inspw.psexecj.FleetExecutorTest.exited;
+import static org.junit.Assert.*;
+
+public class AdmissionControlledExecutorTest {
+
+    private static final Command COMMAND = Command.prepare().cmd("dir").build();
+
+    @Test(timeout = 10000)
+    public void submit_QueuesExecutions_GivenMaxConcurrentReached() throws Exception {
+        ConcurrentLinkedQueue<CompletableFuture<ExecutionResult>> pending = new ConcurrentLinkedQueue<>();
+        AsyncExecutor executor = (command, computer) -> {
+            CompletableFuture<ExecutionResult> future = new CompletableFuture<>();
+            pending.add(future);
+            return future;
+        };
+        AdmissionControlledExecutor admission = new AdmissionControlledExecutor(executor,
+                AdmissionPolicy.prepare().maxConcurrent(2).build());
+
+        List<CompletableFuture<ExecutionResult>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            results.add(admission.submit(COMMAND, "host" + i));
+        }
+
+        assertEquals(2, pending.size());
+        assertEquals(1, admission.getQueued());
+
+        pending.poll().complete(exited(0));
+        results.get(0).get();
+
+        assertEquals(2, pending.size());
+        assertEquals(0, admission.getQueued());
+    }
+
+    @Test(timeout = 10000)
+    public void submit_RejectsNewExecution_GivenQueueFull() throws Exception {
+        AdmissionControlledExecutor admission = new AdmissionControlledExecutor(
+                (command, computer) -> new CompletableFuture<>(),
+                AdmissionPolicy.prepare().maxConcurrent(1).maxQueued(1).build());
+
+        admission.submit(COMMAND, "a");
+        CompletableFuture<ExecutionResult> waiting = admission.submit(COMMAND, "b");
+        ExecutionResult rejected = admission.submit(COMMAND, "c").get();
+
+        assertEquals(Termination.REJECTED, rejected.termination());
+        assertTrue(rejected.failure() instanceof RejectedExecutionException);
+        assertFalse(waiting.isDone());
+    }
+
+    @Test(timeout = 10000)
+    public void submit_RejectsOldestExecution_GivenRejectOldestPolicy() throws Exception {
+        AdmissionControlledExecutor admission = new AdmissionControlledExecutor(
+                (command, computer) -> new CompletableFuture<>(),
+                AdmissionPolicy.prepare()
+                        .maxConcurrent(1)
+                        .maxQueued(1)
+                        .rejectionPolicy(AdmissionPolicy.RejectionPolicy.REJECT_OLDEST)
+                        .build());
+
+        admission.submit(COMMAND, "a");
+        CompletableFuture<ExecutionResult> oldest = admission.submit(COMMAND, "b");
+        CompletableFuture<ExecutionResult> newest = admission.submit(COMMAND, "c");
+
+        assertEquals(Termination.REJECTED, oldest.get().termination());
+        assertFalse(newest.isDone());
+        assertEquals(1, admission.getQueued());
+    }
+
+    @Test(timeout = 10000)
+    public void submit_SpacesExecutions_GivenHostRate() throws Exception {
+        AdmissionControlledExecutor admission = new AdmissionControlledExecutor(
+                (command, computer) -> CompletableFuture.completedFuture(exited(0)),
+                AdmissionPolicy.prepare().hostRate(10).hostBurst(1).build());
+
+        long start = System.nanoTime();
+        CompletableFuture<ExecutionResult> first = admission.submit(COMMAND, "a");
+        CompletableFuture<ExecutionResult> other = admission.submit(COMMAND, "b");
+        CompletableFuture<ExecutionResult> second = admission.submit(COMMAND, "a");
+
+        first.get();
+        other.get();
+        assertFalse(second.isDone());
+        second.get();
+        assertTrue(System.nanoTime() - start >= 80_000_000L);
+    }
+
+    @Test(timeout = 10000)
+    public void submit_DrainsDeepQueue_GivenExecutionsCompletingImmediately() throws Exception {
+        CompletableFuture<ExecutionResult> blocker = new CompletableFuture<>();
+        AtomicInteger submitted = new AtomicInteger();
+        AdmissionControlledExecutor admission = new AdmissionControlledExecutor(
+                (command, computer) -> submitted.incrementAndGet() == 1
+                        ? blocker
+                        : CompletableFuture.completedFuture(exited(0)),
+                AdmissionPolicy.prepare().maxConcurrent(1).maxQueued(10_000).build());
+
+        admission.submit(COMMAND, "first");
+        CompletableFuture<?>[] queued = new CompletableFuture<?>[10_000];
+
+        for (int i = 0; i < queued.length; i++) {
+            queued[i] = admission.submit(COMMAND, "host" + i);
+        }
+
+        blocker.complete(exited(0));
+        CompletableFuture.allOf(queued).get();
+
+        assertEquals(10_001, submitted.get());
+    }
+
+    @Test
+    public void refund_ReturnsToken_GivenUnusedToken() {
+        TokenBucket bucket = new TokenBucket(1, 1);
+
+        assertEquals(0, bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire() > 0);
+
+        bucket.refund();
+
+        assertEquals(0, bucket.tryAcquire());
+    }
+
+    @Test(timeout = 10000)
+    public void submit_WithdrawsQueuedExecution_GivenCancelled() {
+        AdmissionControlledExecutor admission = new AdmissionControlledExecutor(
+                (command, computer) -> new CompletableFuture<>(),
+                AdmissionPolicy.prepare().maxConcurrent(1).build());
+
+        admission.submit(COMMAND, "a");
+        admission.submit(COMMAND, "b").cancel(true);
+
+        assertEquals(0, admission.getQueued());
+    }
+
+    @Test(timeout = 10000)
+    public void submit_EvictsIdleBuckets_GivenManyHosts() throws Exception {
+        AdmissionControlledExecutor admission = new AdmissionControlledExecutor(
+                (command, computer) -> CompletableFuture.completedFuture(exited(0)),
+                AdmissionPolicy.prepare().hostRate(1000).build());
+        int hosts = AdmissionControlledExecutor.MIN_EVICTION_SIZE * 2;
+
+        for (int i = 0; i < hosts; i++) {
+            admission.submit(COMMAND, "old" + i).get();
+        }
+
+        // Let the buckets of the first hosts fill up again.
+        Thread.sleep(50);
+
+        for (int i = 0; i < hosts; i++) {
+            admission.submit(COMMAND, "new" + i).get();
+        }
+
+        assertTrue(admission.getBucketCount() <= hosts);
+    }
+
+}
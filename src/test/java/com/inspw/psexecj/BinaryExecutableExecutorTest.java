@@ -1,15 +1,32 @@
 package com.inspw.psexecj;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class BinaryExecutableExecutorTest {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     /**
      * Invoke {@link BinaryExecutableExecutor#craft(Command)} with the specified command. For testing purposes.
      *
@@ -285,4 +302,275 @@ public class BinaryExecutableExecutorTest {
         }, command);
     }
 
+    @Test(timeout = 10000)
+    public void submit_CompletesWithExitCode_GivenStubExecutable() throws Exception {
+        BinaryExecutableExecutor executor = new BinaryExecutableExecutor(StubExecutable.create(temporaryFolder.getRoot()));
+        Command command = StubExecutable.shell("exit 3").build();
+
+        ExecutionResult result = executor.submit(command).get(5, TimeUnit.SECONDS);
+
+        assertEquals(3, result.exitCode());
+        assertEquals(Termination.EXITED, result.termination());
+        assertTrue(result.pid() > 0);
+        assertTrue(result.wallTime().compareTo(result.spawnTime()) >= 0);
+    }
+
+    @Test(timeout = 10000)
+    public void submit_CompletesAsTimedOut_GivenExecuteTimeoutReached() throws Exception {
+        BinaryExecutableExecutor executor = new BinaryExecutableExecutor(StubExecutable.create(temporaryFolder.getRoot()), 200);
+        Command command = StubExecutable.shell("sleep 30").build();
+
+        ExecutionResult result = executor.submit(command).get(5, TimeUnit.SECONDS);
+
+        assertEquals(-1, result.exitCode());
+        assertEquals(Termination.TIMED_OUT, result.termination());
+    }
+
+    @Test(timeout = 10000)
+    public void submit_CompletesAsTimedOut_GivenTimeoutPolicy() throws Exception {
+        BinaryExecutableExecutor executor = new BinaryExecutableExecutor(StubExecutable.create(temporaryFolder.getRoot()));
+        List<ExecutionResult> recorded = new CopyOnWriteArrayList<>();
+        executor.setTimeoutPolicy(new TimeoutPolicy() {
+            @Override
+            public long timeout(Command command, long executeTimeout) {
+                return 200;
+            }
+
+            @Override
+            public void record(Command command, ExecutionResult result) {
+                recorded.add(result);
+            }
+        });
+        Command command = StubExecutable.shell("sleep 30").build();
+
+        ExecutionResult result = executor.submit(command).get(5, TimeUnit.SECONDS);
+
+        assertEquals(Termination.TIMED_OUT, result.termination());
+        assertEquals(Collections.singletonList(result), recorded);
+    }
+
+    @Test(timeout = 10000)
+    public void execute_ReturnsExitCode_GivenStubExecutable() throws IOException {
+        BinaryExecutableExecutor executor = new BinaryExecutableExecutor(StubExecutable.create(temporaryFolder.getRoot()));
+        Command command = StubExecutable.shell("exit 7").build();
+
+        assertEquals(7, executor.execute(command).exitCode());
+    }
+
+    @Test(timeout = 10000)
+    public void submit_DeliversLines_GivenLineOutputSink() throws Exception {
+        BinaryExecutableExecutor executor = new BinaryExecutableExecutor(StubExecutable.create(temporaryFolder.getRoot()));
+        List<String> stdout = new CopyOnWriteArrayList<>();
+        List<String> stderr = new CopyOnWriteArrayList<>();
+        Command command = StubExecutable.shell("echo one; echo two >&2; echo three")
+                .outputSink(OutputSink.lines((c, source, line) ->
+                        (source == OutputSource.STDOUT ? stdout : stderr).add(line)))
+                .build();
+
+        executor.submit(command).get(5, TimeUnit.SECONDS);
+
+        assertArrayEquals(new String[]{"one", "three"}, stdout.toArray());
+        assertArrayEquals(new String[]{"two"}, stderr.toArray());
+    }
+
+    @Test(timeout = 10000)
+    public void execute_DoesNotStall_GivenOutputLargerThanPipeBuffer() throws IOException {
+        BinaryExecutableExecutor executor = new BinaryExecutableExecutor(StubExecutable.create(temporaryFolder.getRoot()), 5000);
+        AtomicLong received = new AtomicLong();
+        Command command = StubExecutable.shell("head -c 1048576 /dev/zero; head -c 1048576 /dev/zero >&2")
+                .outputSink(OutputSink.chunks((c, source, buffer, offset, length) -> received.addAndGet(length)))
+                .build();
+
+        assertEquals(0, executor.execute(command).exitCode());
+        assertEquals(2 * 1048576, received.get());
+    }
+
+    @Test(timeout = 10000)
+    public void submit_CapturesOutput_GivenTimedOut() throws Exception {
+        BinaryExecutableExecutor executor = new BinaryExecutableExecutor(StubExecutable.create(temporaryFolder.getRoot()), 500);
+        executor.setOutputCapture(OutputCapture.prepare().build());
+        Command command = StubExecutable.shell("echo started; exec sleep 30").build();
+
+        ExecutionResult result = executor.submit(command).get(5, TimeUnit.SECONDS);
+
+        assertEquals(Termination.TIMED_OUT, result.termination());
+        assertEquals("started\n", result.stdout().toString(StandardCharsets.US_ASCII));
+    }
+
+    @Test(timeout = 10000)
+    public void submit_Completes_GivenChildHoldingOutputOpen() throws Exception {
+        BinaryExecutableExecutor executor = new BinaryExecutableExecutor(StubExecutable.create(temporaryFolder.getRoot()));
+        executor.setOutputCapture(OutputCapture.prepare().build());
+        executor.setOutputGracePeriod(200);
+        File pidFile = new File(temporaryFolder.getRoot(), "child.pid");
+        Command command = StubExecutable.shell("sleep 30 & echo $! > '" + pidFile + "'; exit 4").build();
+
+        try {
+            ExecutionResult result = executor.submit(command).get(5, TimeUnit.SECONDS);
+
+            assertEquals(Termination.EXITED, result.termination());
+            assertEquals(4, result.exitCode());
+            assertNull(result.stdout());
+        } finally {
+            long childPid = Long.parseLong(new String(Files.readAllBytes(pidFile.toPath()), StandardCharsets.US_ASCII).trim());
+            ProcessHandle.of(childPid).ifPresent(ProcessHandle::destroyForcibly);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void submit_CapturesOutput_GivenOutputCapture() throws Exception {
+        BinaryExecutableExecutor executor = new BinaryExecutableExecutor(StubExecutable.create(temporaryFolder.getRoot()));
+        executor.setOutputCapture(OutputCapture.prepare().headSize(6).tailSize(6).build());
+        Command command = StubExecutable.shell("printf 'head-middle-tail'; printf 'oops' >&2").build();
+
+        ExecutionResult result = executor.submit(command).get(5, TimeUnit.SECONDS);
+
+        assertEquals("head-me-tail", result.stdout().toString(StandardCharsets.US_ASCII));
+        assertEquals(16, result.stdout().size());
+        assertEquals("oops", result.stderr().toString(StandardCharsets.US_ASCII));
+    }
+
+    @Test(timeout = 10000)
+    public void submit_WritesOutputFiles_GivenOutputRedirect() throws Exception {
+        File directory = temporaryFolder.newFolder("logs");
+        BinaryExecutableExecutor executor = new BinaryExecutableExecutor(StubExecutable.create(temporaryFolder.getRoot()));
+        executor.setOutputRedirect(OutputRedirect.prepare()
+                .directory(directory)
+                .template(OutputRedirect.HOST + "." + OutputRedirect.STREAM)
+                .build());
+        Command command = StubExecutable.shell("echo out; echo err >&2")
+                .computer("10.22.101.101")
+                .build();
+
+        assertEquals(0, executor.submit(command).get(5, TimeUnit.SECONDS).exitCode());
+
+        assertEquals("out\n", new String(Files.readAllBytes(new File(directory, "10.22.101.101.stdout").toPath()),
+                StandardCharsets.US_ASCII));
+        assertEquals("err\n", new String(Files.readAllBytes(new File(directory, "10.22.101.101.stderr").toPath()),
+                StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void resolve_NamesFileAfterFirstComputer_GivenManyComputers() {
+        OutputRedirect redirect = OutputRedirect.prepare().directory(new File("logs")).build();
+        Command.CommandBuilder builder = Command.prepare().cmd("hostname");
+
+        for (int i = 0; i < 1000; i++) {
+            builder.computer("server" + i + ".example.com");
+        }
+
+        String name = redirect.resolve(builder.build(), OutputSource.STDOUT).getName();
+
+        assertTrue(name, name.startsWith("server0.example.com+"));
+        assertTrue(name, name.length() < 64);
+    }
+
+    @Test(timeout = 10000)
+    public void submit_CompletesAsSpawnFailed_GivenMissingExecutable() throws Exception {
+        BinaryExecutableExecutor executor = new BinaryExecutableExecutor(new File(temporaryFolder.getRoot(), "missing.exe"));
+        Command command = Command.prepare().cmd("dir").build();
+
+        ExecutionResult result = executor.submit(command).get(5, TimeUnit.SECONDS);
+
+        assertEquals(Termination.SPAWN_FAILED, result.termination());
+        assertEquals(-1, result.pid());
+        assertTrue(result.failure() instanceof IOException);
+    }
+
+    @Test(timeout = 10000)
+    public void submit_KillsProcessTree_GivenExecuteTimeoutReached() throws Exception {
+        BinaryExecutableExecutor executor = new BinaryExecutableExecutor(StubExecutable.create(temporaryFolder.getRoot()), 300);
+        executor.setKillGracePeriod(100);
+        File pidFile = new File(temporaryFolder.getRoot(), "child.pid");
+        Command command = StubExecutable.shell("sleep 30 & echo $! > '" + pidFile + "'; wait").build();
+
+        ExecutionResult result = executor.submit(command).get(5, TimeUnit.SECONDS);
+        long childPid = Long.parseLong(new String(Files.readAllBytes(pidFile.toPath()), StandardCharsets.US_ASCII).trim());
+
+        assertEquals(Termination.TIMED_OUT, result.termination());
+
+        awaitDeath(childPid);
+    }
+
+    /**
+     * Wait until the process with the given ID is no longer alive.
+     *
+     * @param pid the process ID
+     */
+    private static void awaitDeath(long pid) throws InterruptedException {
+        while (ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false)) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void cancel_KillsProcess_GivenRunningExecution() throws Exception {
+        BinaryExecutableExecutor executor = new BinaryExecutableExecutor(StubExecutable.create(temporaryFolder.getRoot()));
+        ExecutionResult[] completed = new ExecutionResult[1];
+        executor.setListener(new ExecutorListener() {
+            @Override
+            public void onCompleted(Command command, ExecutionResult result) {
+                completed[0] = result;
+            }
+        });
+
+        CompletableFuture<ExecutionResult> result = executor.submit(StubExecutable.shell("sleep 30").build());
+
+        assertTrue(result.cancel(true));
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(Termination.KILLED, completed[0].termination());
+    }
+
+    @Test(timeout = 10000)
+    public void shutdown_RejectsExecutions_GivenShutdownExecutor() throws Exception {
+        BinaryExecutableExecutor executor = new BinaryExecutableExecutor(StubExecutable.create(temporaryFolder.getRoot()));
+
+        executor.shutdown();
+
+        assertTrue(executor.isTerminated());
+        assertEquals(Termination.REJECTED, executor.submit(StubExecutable.shell("exit 0").build())
+                .get(5, TimeUnit.SECONDS).termination());
+    }
+
+    @Test(timeout = 10000)
+    public void shutdownNow_KillsRunningExecutions_GivenRunningExecutions() throws Exception {
+        BinaryExecutableExecutor executor = new BinaryExecutableExecutor(StubExecutable.create(temporaryFolder.getRoot()));
+        CompletableFuture<ExecutionResult> first = executor.submit(StubExecutable.shell("sleep 30").build());
+        CompletableFuture<ExecutionResult> second = executor.submit(StubExecutable.shell("sleep 30").build());
+
+        assertEquals(2, executor.shutdownNow().size());
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(Termination.KILLED, first.get().termination());
+        assertEquals(Termination.KILLED, second.get().termination());
+    }
+
+    @Test(timeout = 10000)
+    public void execute_KillsProcessAndKeepsInterruptFlag_GivenInterrupt() throws Exception {
+        BinaryExecutableExecutor executor = new BinaryExecutableExecutor(StubExecutable.create(temporaryFolder.getRoot()));
+        ExecutionResult[] result = new ExecutionResult[1];
+        boolean[] interrupted = new boolean[1];
+        Thread thread = new Thread(() -> {
+            try {
+                result[0] = executor.execute(StubExecutable.shell("sleep 30").build());
+                interrupted[0] = Thread.currentThread().isInterrupted();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        thread.start();
+        Thread.sleep(200);
+        thread.interrupt();
+        thread.join();
+
+        assertEquals(Termination.INTERRUPTED, result[0].termination());
+        assertTrue(interrupted[0]);
+        awaitDeath(result[0].pid());
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
 }
@@ -0,0 +1,153 @@
+package com.inspw.psexecj;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class CapturedOutputTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Write the given text through a capturing stream in chunks of the given size.
+     *
+     * @param capture   the capture settings
+     * @param text      the text to write
+     * @param chunkSize the number of bytes to write at once
+     * @return the captured output
+     */
+    private static CapturedOutput capture(OutputCapture capture, String text, int chunkSize) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        CaptureOutputStream stream = new CaptureOutputStream(capture);
+
+        for (int i = 0; i < bytes.length; i += chunkSize) {
+            stream.write(bytes, i, Math.min(chunkSize, bytes.length - i));
+        }
+
+        stream.close();
+        return stream.detach();
+    }
+
+    /**
+     * Read the whole stream of the captured output into a string.
+     *
+     * @param output the captured output
+     * @return the read string
+     */
+    private static String readStream(CapturedOutput output) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (InputStream in = output.openStream()) {
+            in.transferTo(bytes);
+        }
+
+        return bytes.toString(StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void capture_KeepsOutputInMemory_GivenOutputWithinSpillThreshold() throws IOException {
+        OutputCapture settings = OutputCapture.prepare()
+                .headSize(3)
+                .tailSize(4)
+                .spill(true)
+                .spillThreshold(16)
+                .spillDirectory(temporaryFolder.getRoot())
+                .build();
+
+        CapturedOutput output = capture(settings, "abcdefghijklmnop", 5);
+
+        assertFalse(output.isSpilled());
+        assertEquals("abcdefghijklmnop", output.toString(StandardCharsets.US_ASCII));
+        assertTrue(capture(settings, "abcdefghijklmnopq", 5).isSpilled());
+    }
+
+    @Test
+    public void close_DeletesSpillFile_GivenOutputDetachedBeforeClose() throws IOException {
+        OutputCapture settings = OutputCapture.prepare()
+                .headSize(3)
+                .tailSize(4)
+                .spill(true)
+                .spillDirectory(temporaryFolder.getRoot())
+                .build();
+        CaptureOutputStream stream = new CaptureOutputStream(settings);
+        stream.write("abcdefghijklmnop".getBytes(StandardCharsets.US_ASCII));
+
+        assertNull(stream.detach());
+        assertEquals(1, temporaryFolder.getRoot().list().length);
+
+        stream.close();
+
+        assertEquals(0, temporaryFolder.getRoot().list().length);
+    }
+
+    @Test
+    public void capture_RetainsEverything_GivenOutputWithinHeadAndTail() throws IOException {
+        OutputCapture settings = OutputCapture.prepare().headSize(4).tailSize(4).build();
+
+        CapturedOutput output = capture(settings, "abcdefg", 3);
+
+        assertEquals(7, output.size());
+        assertFalse(output.isTruncated());
+        assertEquals("abcdefg", output.toString(StandardCharsets.US_ASCII));
+        assertEquals("abcdefg", readStream(output));
+    }
+
+    @Test
+    public void capture_RetainsHeadAndTail_GivenOverflowingOutput() throws IOException {
+        OutputCapture settings = OutputCapture.prepare().headSize(3).tailSize(4).build();
+
+        CapturedOutput output = capture(settings, "abcdefghijklmnop", 5);
+
+        assertEquals(16, output.size());
+        assertEquals(9, output.dropped());
+        assertEquals("abcmnop", output.toString(StandardCharsets.US_ASCII));
+        assertEquals("abcmnop", readStream(output));
+    }
+
+    @Test
+    public void openStream_FailsReading_GivenOutputClosedMeanwhile() throws IOException {
+        OutputCapture settings = OutputCapture.prepare().headSize(3).tailSize(4).build();
+        CapturedOutput output = capture(settings, "abcdefghijklmnop", 5);
+
+        try (InputStream in = output.openStream()) {
+            assertEquals('a', in.read());
+            output.close();
+
+            try {
+                in.read(new byte[8]);
+                fail("Read closed output");
+            } catch (IOException e) {
+                assertEquals("Captured output is closed", e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void capture_SpillsToFile_GivenOverflowingOutputAndSpill() throws IOException {
+        OutputCapture settings = OutputCapture.prepare()
+                .headSize(3)
+                .tailSize(4)
+                .spill(true)
+                .spillDirectory(temporaryFolder.getRoot())
+                .build();
+
+        CapturedOutput output = capture(settings, "abcdefghijklmnop", 2);
+
+        assertTrue(output.isSpilled());
+        assertFalse(output.isTruncated());
+        assertEquals("abcdefghijklmnop", output.toString(StandardCharsets.US_ASCII));
+        assertEquals("abcdefghijklmnop", readStream(output));
+
+        output.close();
+        assertEquals(0, temporaryFolder.getRoot().list().length);
+    }
+
+}
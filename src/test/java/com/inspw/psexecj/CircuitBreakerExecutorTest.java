@@ -0,0 +1,115 @@
+package com.inspw.psexecj;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.inspw.psexecj.FleetExecutorTest.exited;
+import static org.junit.Assert.*;
+
+public class CircuitBreakerExecutorTest {
+
+    private static final Command COMMAND = Command.prepare().cmd("dir").build();
+
+    @Test(timeout = 10000)
+    public void submit_FailsFast_GivenHostOverFailureThreshold() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        AsyncExecutor executor = (command, computer) -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.completedFuture(exited(-1));
+        };
+        CircuitBreakerExecutor breaker = new CircuitBreakerExecutor(executor,
+                CircuitBreakerPolicy.prepare().failureThreshold(2).build());
+
+        breaker.submit(COMMAND, "dead").get();
+        breaker.submit(COMMAND, "dead").get();
+        ExecutionResult result = breaker.submit(COMMAND, "dead").get();
+
+        assertEquals(Termination.REJECTED, result.termination());
+        assertEquals(2, attempts.get());
+        assertEquals(HostHealth.State.OPEN, breaker.getHealth().get("dead").state());
+        assertEquals(Termination.EXITED, breaker.submit(COMMAND, "alive").get().termination());
+    }
+
+    @Test(timeout = 10000)
+    public void submit_ClosesCircuit_GivenSuccessfulProbe() throws Exception {
+        AtomicBoolean reachable = new AtomicBoolean();
+        AtomicInteger attempts = new AtomicInteger();
+        AsyncExecutor executor = (command, computer) -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.completedFuture(exited(reachable.get() ? 0 : -1));
+        };
+        CircuitBreakerExecutor breaker = new CircuitBreakerExecutor(executor,
+                CircuitBreakerPolicy.prepare().failureThreshold(1).openDuration(100).build());
+
+        breaker.submit(COMMAND, "host").get();
+        assertEquals(Termination.REJECTED, breaker.submit(COMMAND, "host").get().termination());
+
+        Thread.sleep(150);
+        reachable.set(true);
+
+        assertTrue(breaker.submit(COMMAND, "host").get().succeeded());
+        assertEquals(HostHealth.State.CLOSED, breaker.getHealth().get("host").state());
+        assertEquals(2, attempts.get());
+    }
+
+    @Test(timeout = 10000)
+    public void submit_LetsOneProbeThrough_GivenHalfOpenCircuit() throws Exception {
+        CompletableFuture<ExecutionResult> probe = new CompletableFuture<>();
+        AtomicInteger attempts = new AtomicInteger();
+        AsyncExecutor executor = (command, computer) -> attempts.incrementAndGet() == 1
+                ? CompletableFuture.completedFuture(exited(-1))
+                : probe;
+        CircuitBreakerExecutor breaker = new CircuitBreakerExecutor(executor,
+                CircuitBreakerPolicy.prepare().failureThreshold(1).openDuration(50).build());
+
+        breaker.submit(COMMAND, "host").get();
+        Thread.sleep(100);
+        breaker.submit(COMMAND, "host");
+
+        assertEquals(HostHealth.State.HALF_OPEN, breaker.getHealth().get("host").state());
+        assertEquals(Termination.REJECTED, breaker.submit(COMMAND, "host").get().termination());
+
+        probe.complete(exited(-1));
+
+        assertEquals(HostHealth.State.OPEN, breaker.getHealth().get("host").state());
+        assertEquals(2, attempts.get());
+    }
+
+    @Test(timeout = 10000)
+    public void submit_ReturnsFailedFuture_GivenExecutorThrowing() throws Exception {
+        AtomicBoolean fail = new AtomicBoolean(true);
+        AsyncExecutor executor = (command, computer) -> {
+            if (fail.get()) {
+                throw new IllegalStateException("executor failed");
+            }
+
+            return CompletableFuture.completedFuture(exited(0));
+        };
+        CircuitBreakerExecutor breaker = new CircuitBreakerExecutor(executor,
+                CircuitBreakerPolicy.prepare().failureThreshold(1).build());
+
+        CompletableFuture<ExecutionResult> failed = breaker.submit(COMMAND, "host");
+
+        assertTrue(failed.isCompletedExceptionally());
+        fail.set(false);
+        assertEquals(Termination.EXITED, breaker.submit(COMMAND, "host").get().termination());
+    }
+
+    @Test
+    public void track_EvictsLeastRecentlyContactedHosts_GivenCapacityExceeded() {
+        HostHealthCache cache = new HostHealthCache(60_000, 4);
+        long now = System.nanoTime();
+
+        for (int i = 0; i < 5; i++) {
+            cache.track("host" + i, now + i);
+        }
+
+        assertTrue(cache.size() <= 4);
+        assertNull(cache.get("host0"));
+        assertNotNull(cache.get("host4"));
+    }
+
+}
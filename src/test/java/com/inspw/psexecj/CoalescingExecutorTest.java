@@ -0,0 +1,118 @@
+package com.inspw.psexecj;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static com.inspw.psexecj.FleetExecutorTest.exited;
+import static org.junit.Assert.*;
+
+public class CoalescingExecutorTest {
+
+    private static final Command COMMAND = Command.prepare().cmd("systeminfo").build();
+
+    private final ConcurrentLinkedQueue<CompletableFuture<ExecutionResult>> pending = new ConcurrentLinkedQueue<>();
+
+    private final AsyncExecutor executor = (command, computer) -> {
+        CompletableFuture<ExecutionResult> future = new CompletableFuture<>();
+        pending.add(future);
+        return future;
+    };
+
+    @Test(timeout = 10000)
+    public void submit_SharesExecution_GivenIdenticalCommandInFlight() throws Exception {
+        CoalescingExecutor coalescing = new CoalescingExecutor(executor);
+
+        CompletableFuture<ExecutionResult> first = coalescing.submit(COMMAND, "a");
+        CompletableFuture<ExecutionResult> second = coalescing.submit(Command.prepare().cmd("systeminfo").build(), "a");
+        CompletableFuture<ExecutionResult> other = coalescing.submit(COMMAND, "b");
+
+        assertEquals(2, pending.size());
+
+        pending.poll().complete(exited(4));
+
+        assertEquals(4, first.get().exitCode());
+        assertEquals(4, second.get().exitCode());
+        assertFalse(other.isDone());
+    }
+
+    @Test(timeout = 10000)
+    public void submit_GivesEachSubmitterOwnOutput_GivenSharedExecution() throws Exception {
+        CoalescingExecutor coalescing = new CoalescingExecutor(executor);
+
+        CompletableFuture<ExecutionResult> first = coalescing.submit(COMMAND, "a");
+        CompletableFuture<ExecutionResult> second = coalescing.submit(COMMAND, "a");
+
+        byte[] head = BufferPool.acquire(16);
+        byte[] output = "Host Name: A".getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(output, 0, head, 0, output.length);
+        CapturedOutput stdout = new CapturedOutput(output.length, head, output.length, null, 0, 0);
+        pending.poll().complete(new ExecutionResult(0, Termination.EXITED, 1, Duration.ZERO, Duration.ZERO,
+                stdout, null, null));
+
+        first.get().stdout().close();
+
+        assertEquals("Host Name: A", second.get().stdout().toString(StandardCharsets.UTF_8));
+        assertNotSame(first.get().stdout(), second.get().stdout());
+    }
+
+    @Test(timeout = 10000)
+    public void submit_RunsAgain_GivenPreviousExecutionCompleted() {
+        CoalescingExecutor coalescing = new CoalescingExecutor(executor);
+
+        coalescing.submit(COMMAND, "a");
+        pending.poll().complete(exited(0));
+        coalescing.submit(COMMAND, "a");
+
+        assertEquals(1, pending.size());
+    }
+
+    @Test(timeout = 10000)
+    public void submit_ReusesResult_GivenResultTtl() throws Exception {
+        CoalescingExecutor coalescing = new CoalescingExecutor(executor);
+        coalescing.setResultTtl(60_000);
+
+        coalescing.submit(COMMAND, "a");
+        pending.poll().complete(exited(2));
+
+        assertEquals(2, coalescing.submit(COMMAND, "a").get().exitCode());
+        assertTrue(pending.isEmpty());
+    }
+
+    @Test(timeout = 10000)
+    public void submit_CancelsSharedExecution_GivenAllSubmittersCancelled() {
+        CoalescingExecutor coalescing = new CoalescingExecutor(executor);
+
+        CompletableFuture<ExecutionResult> first = coalescing.submit(COMMAND, "a");
+        CompletableFuture<ExecutionResult> second = coalescing.submit(COMMAND, "a");
+        CompletableFuture<ExecutionResult> execution = pending.peek();
+
+        first.cancel(true);
+        assertFalse(execution.isCancelled());
+
+        second.cancel(true);
+        assertTrue(execution.isCancelled());
+
+        coalescing.submit(COMMAND, "a");
+        assertEquals(2, pending.size());
+    }
+
+    @Test(timeout = 10000)
+    public void submit_DoesNotShare_GivenOutputSink() {
+        CoalescingExecutor coalescing = new CoalescingExecutor(executor);
+        Command command = Command.prepare()
+                .cmd("systeminfo")
+                .outputSink(OutputSink.lines((c, source, line) -> {
+                }))
+                .build();
+
+        coalescing.submit(command, "a");
+        coalescing.submit(command, "a");
+
+        assertEquals(2, pending.size());
+    }
+
+}
@@ -0,0 +1,126 @@
+package com.inspw.psexecj;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CommandTemplateTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final String EXE = new File("C:\\PSTools\\PsExec.exe").getAbsolutePath();
+
+    /**
+     * Compile the given command with a dummy executor.
+     *
+     * @param command the command to compile
+     * @return the compiled template
+     */
+    private static CommandTemplate compile(Command command) {
+        return new BinaryExecutableExecutor(new File("C:\\PSTools\\PsExec.exe")).compile(command);
+    }
+
+    @Test
+    public void craft_MatchesCommand_GivenNoComputer() {
+        Command command = Command.prepare()
+                .cmd("ping")
+                .computer("10.22.101.101")
+                .computer("10.22.101.102")
+                .username("root")
+                .arguments(new String[]{"localhost"})
+                .build();
+
+        assertArrayEquals(new String[]{
+                EXE, "-accepteula", "-nobanner",
+                "\\\\10.22.101.101,10.22.101.102",
+                "-u", "root",
+                "ping", "localhost"
+        }, compile(command).craft());
+    }
+
+    @Test
+    public void craft_ExpandsHostSets_GivenNoComputer() {
+        Command command = Command.prepare()
+                .cmd("ping")
+                .computer("alpha")
+                .hosts(HostSet.cidr("10.22.101.0/30"))
+                .build();
+
+        assertArrayEquals(new String[]{
+                EXE, "-accepteula", "-nobanner",
+                "\\\\alpha,10.22.101.1,10.22.101.2",
+                "ping"
+        }, compile(command).craft());
+    }
+
+    @Test
+    public void craft_SplicesComputer_GivenComputer() {
+        Command command = Command.prepare()
+                .cmd("ping")
+                .computer("10.22.101.101")
+                .computer("10.22.101.102")
+                .detach(true)
+                .arguments(new String[]{"localhost"})
+                .build();
+
+        assertArrayEquals(new String[]{
+                EXE, "-accepteula", "-nobanner",
+                "\\\\10.22.101.103",
+                "-d",
+                "ping", "localhost"
+        }, compile(command).craft("10.22.101.103"));
+    }
+
+    @Test
+    public void craft_SplicesComputerAndArguments_GivenComputerAndArguments() {
+        Command command = Command.prepare()
+                .cmd("ping")
+                .arguments(new String[]{"localhost"})
+                .build();
+
+        assertArrayEquals(new String[]{
+                EXE, "-accepteula", "-nobanner",
+                "\\\\10.22.101.101",
+                "ping", "-n", "1", "10.0.0.1"
+        }, compile(command).craft("10.22.101.101", new String[]{"-n", "1", "10.0.0.1"}));
+    }
+
+    @Test
+    public void withoutCopy_RunsProgramByFileName_GivenCopiedProgram() {
+        Command command = Command.prepare()
+                .cmd("/opt/tools/tool.exe")
+                .copy(true)
+                .copyOverride(Command.COPY_OVERRIDE_ALWAYS)
+                .build();
+
+        assertArrayEquals(new String[]{
+                EXE, "-accepteula", "-nobanner",
+                "\\\\10.22.101.101",
+                "tool.exe"
+        }, compile(command).withoutCopy().craft("10.22.101.101"));
+        assertArrayEquals(new String[]{
+                EXE, "-accepteula", "-nobanner",
+                "\\\\10.22.101.101",
+                "-c", "-f", "/opt/tools/tool.exe"
+        }, compile(command).withForcedCopy().craft("10.22.101.101"));
+    }
+
+    @Test(timeout = 10000)
+    public void submit_ExecutesWithOverriddenArguments_GivenTemplate() throws Exception {
+        BinaryExecutableExecutor executor = new BinaryExecutableExecutor(StubExecutable.create(temporaryFolder.getRoot()));
+        CommandTemplate template = executor.compile(StubExecutable.shell("exit 1").build());
+
+        ExecutionResult result = executor.submit(template, "10.22.101.101", new String[]{"-c", "exit 4"})
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals(4, result.exitCode());
+    }
+
+}
@@ -0,0 +1,122 @@
+package com.inspw.psexecj;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeFalse;
+
+public class CopyCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File program(String content) throws Exception {
+        File program = new File(temporaryFolder.getRoot(), "tool.exe");
+        Files.write(program.toPath(), content.getBytes(StandardCharsets.US_ASCII));
+        return program;
+    }
+
+    @Test
+    public void state_DetectsStaleCopy_GivenChangedProgram() throws Exception {
+        CopyCache cache = new CopyCache();
+        File program = program("v1");
+        cache.delivered("host", program.getName(), cache.hash(program));
+
+        assertEquals(CopyCache.State.DELIVERED, cache.state("HOST", "TOOL.exe", cache.hash(program)));
+
+        Files.write(program.toPath(), "version 2".getBytes(StandardCharsets.US_ASCII));
+
+        assertEquals(CopyCache.State.STALE, cache.state("host", "tool.exe", cache.hash(program)));
+        assertEquals(CopyCache.State.UNKNOWN, cache.state("other", "tool.exe", cache.hash(program)));
+    }
+
+    @Test
+    public void load_RestoresDeliveries_GivenPersistedFile() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("copies.tsv");
+        File program = program("v1");
+        CopyCache cache = new CopyCache(file);
+        cache.delivered("a", program.getName(), cache.hash(program));
+        cache.delivered("b", program.getName(), cache.hash(program));
+        cache.invalidate("a");
+
+        CopyCache reloaded = new CopyCache(file);
+
+        assertEquals(1, reloaded.size());
+        assertFalse(reloaded.isDelivered("a", program));
+        assertTrue(reloaded.isDelivered("b", program));
+    }
+
+    @Test
+    public void delivered_IsDiscarded_GivenInvalidationSinceDeliveryStarted() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("copies.tsv");
+        File program = program("v1");
+        CopyCache cache = new CopyCache(file);
+        long started = cache.version();
+        cache.invalidate("a");
+
+        assertFalse(cache.delivered("a", program.getName(), cache.hash(program), started));
+        assertFalse(cache.isDelivered("a", program));
+        assertFalse(new CopyCache(file).isDelivered("a", program));
+        assertTrue(cache.delivered("a", program.getName(), cache.hash(program), cache.version()));
+        assertTrue(cache.isDelivered("a", program));
+    }
+
+    @Test
+    public void load_CompactsFile_GivenSupersededDeliveries() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("copies.tsv");
+        File program = program("v1");
+        CopyCache cache = new CopyCache(file);
+
+        for (int i = 0; i < 5; i++) {
+            Files.write(program.toPath(), ("v" + i).getBytes(StandardCharsets.US_ASCII));
+            assertTrue(program.setLastModified(1_000_000L * (i + 1)));
+            cache.delivered("a", program.getName(), cache.hash(program));
+        }
+
+        assertEquals(5, Files.readAllLines(file).size());
+
+        CopyCache reloaded = new CopyCache(file);
+
+        assertEquals(1, Files.readAllLines(file).size());
+        assertTrue(reloaded.isDelivered("a", program));
+    }
+
+    @Test(timeout = 10000)
+    public void submit_DropsCopyFlag_GivenProgramDelivered() throws Exception {
+        assumeFalse(System.getProperty("os.name").startsWith("Windows"));
+
+        File log = temporaryFolder.newFile("argv.log");
+        File exe = new File(temporaryFolder.getRoot(), "psexec-log.sh");
+        Files.write(exe.toPath(), ("#!/bin/sh\nprintf '%s\\n' \"$*\" >> '" + log.getAbsolutePath() + "'\n")
+                .getBytes(StandardCharsets.US_ASCII));
+        assertTrue(exe.setExecutable(true));
+
+        File program = program("v1");
+        BinaryExecutableExecutor executor = new BinaryExecutableExecutor(exe);
+        executor.setCopyCache(new CopyCache());
+        Command command = Command.prepare().cmd(program.getAbsolutePath()).copy(true).build();
+
+        executor.submit(command, "host").get(5, TimeUnit.SECONDS);
+        executor.submit(command, "host").get(5, TimeUnit.SECONDS);
+        Files.write(program.toPath(), "v2".getBytes(StandardCharsets.US_ASCII));
+        assertTrue(program.setLastModified(program.lastModified() + 2000));
+        executor.submit(command, "host").get(5, TimeUnit.SECONDS);
+
+        List<String> runs = Files.readAllLines(log.toPath());
+        assertEquals(3, runs.size());
+        assertTrue(runs.get(0).contains(" -c "));
+        assertFalse(runs.get(1).contains(" -c "));
+        assertTrue(runs.get(1).endsWith("\\\\host tool.exe"));
+        assertTrue(runs.get(2).contains(" -c -f "));
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.inspw.psexecj;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class DeadlineSchedulerTest {
+
+    @Test(timeout = 10000)
+    public void schedule_RunsTask_GivenDelayPassed() throws InterruptedException {
+        DeadlineScheduler scheduler = new DeadlineScheduler(1, TimeUnit.MILLISECONDS, 8);
+        CountDownLatch latch = new CountDownLatch(3);
+        long start = System.nanoTime();
+
+        scheduler.schedule(latch::countDown, 0, TimeUnit.MILLISECONDS);
+        scheduler.schedule(latch::countDown, 5, TimeUnit.MILLISECONDS);
+        // Longer than a full turn of the wheel.
+        DeadlineScheduler.Timeout timeout = scheduler.schedule(latch::countDown, 50, TimeUnit.MILLISECONDS);
+
+        latch.await();
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(timeout.isExpired());
+    }
+
+    @Test(timeout = 10000)
+    public void cancel_PreventsTask_GivenPendingTimeout() throws InterruptedException {
+        DeadlineScheduler scheduler = new DeadlineScheduler(1, TimeUnit.MILLISECONDS, 8);
+        AtomicBoolean ran = new AtomicBoolean();
+        CountDownLatch later = new CountDownLatch(1);
+
+        DeadlineScheduler.Timeout timeout = scheduler.schedule(() -> ran.set(true), 20, TimeUnit.MILLISECONDS);
+        scheduler.schedule(later::countDown, 40, TimeUnit.MILLISECONDS);
+
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+
+        later.await();
+
+        assertFalse(ran.get());
+        assertFalse(timeout.isExpired());
+    }
+
+}
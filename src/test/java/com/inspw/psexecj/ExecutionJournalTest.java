@@ -0,0 +1,168 @@
+package com.inspw.psexecj;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.inspw.psexecj.FleetExecutorTest.exited;
+import static org.junit.Assert.*;
+
+public class ExecutionJournalTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static ExecutionResult timedOut() {
+        return new ExecutionResult(-1, Termination.TIMED_OUT, 1, Duration.ZERO, Duration.ZERO, null, null, null);
+    }
+
+    @Test(timeout = 10000)
+    public void isCompleted_ReturnsTrue_GivenExitedResultBeforeReopen() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("journal.bin");
+
+        try (ExecutionJournal journal = new ExecutionJournal(file)) {
+            journal.record("rollout-1", "Server01", exited(1));
+            journal.record("rollout-1", "server02", timedOut());
+        }
+
+        try (ExecutionJournal journal = new ExecutionJournal(file)) {
+            assertTrue(journal.isCompleted("rollout-1", "SERVER01"));
+            assertFalse(journal.isCompleted("rollout-1", "server02"));
+            assertFalse(journal.isCompleted("rollout-2", "server01"));
+            assertEquals(1, journal.completed("rollout-1"));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void record_CompletesFuture_OnceCommitted() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("journal.bin");
+
+        try (ExecutionJournal journal = new ExecutionJournal(file, 20)) {
+            CompletableFuture<Void> first = journal.record("rollout", "a", exited(0));
+            CompletableFuture<Void> second = journal.record("rollout", "b", exited(0));
+
+            second.get();
+            assertTrue(first.isDone());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void isCompleted_ReturnsFalse_GivenRecordNotCommitted() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("journal.bin");
+
+        try (ExecutionJournal journal = new ExecutionJournal(file, 60_000)) {
+            journal.record("rollout", "a", exited(0));
+            assertFalse(journal.isCompleted("rollout", "a"));
+
+            journal.commit();
+            assertTrue(journal.isCompleted("rollout", "a"));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void isCompleted_ReturnsFalse_GivenUnreachableOrUnreportedComputer() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("journal.bin");
+
+        try (ExecutionJournal journal = new ExecutionJournal(file)) {
+            journal.record("rollout", "a", ExecutionResult.reported(Termination.UNREACHABLE, -1, Duration.ZERO));
+            journal.record("rollout", "b", ExecutionResult.reported(Termination.UNREPORTED, -1, Duration.ZERO));
+            journal.record("rollout", "c", exited(-1));
+            journal.commit();
+
+            assertEquals(0, journal.completed("rollout"));
+        }
+
+        try (ExecutionJournal journal = new ExecutionJournal(file)) {
+            assertEquals(0, journal.completed("rollout"));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void replay_StopsAtTornRecord_GivenCorruptedTail() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("journal.bin");
+
+        try (ExecutionJournal journal = new ExecutionJournal(file)) {
+            journal.record("rollout", "a", exited(0));
+            journal.record("rollout", "b", exited(0));
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(ExecutionJournal.RECORD_SIZE + 20);
+            raf.write(0x7f);
+        }
+
+        try (ExecutionJournal journal = new ExecutionJournal(file)) {
+            assertTrue(journal.isCompleted("rollout", "a"));
+            assertFalse(journal.isCompleted("rollout", "b"));
+
+            journal.record("rollout", "c", exited(0));
+        }
+
+        try (ExecutionJournal journal = new ExecutionJournal(file)) {
+            assertEquals(2, journal.completed("rollout"));
+            assertTrue(journal.isCompleted("rollout", "c"));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void resume_DispatchesRemainingComputers_GivenJournaledRollout() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("journal.bin");
+        Set<String> dispatched = ConcurrentHashMap.newKeySet();
+        AsyncExecutor executor = (command, computer) -> {
+            dispatched.add(computer);
+            return CompletableFuture.completedFuture(exited(0));
+        };
+        Command command = Command.prepare()
+                .cmd("dir")
+                .computer("a").computer("b").computer("c")
+                .build();
+
+        try (ExecutionJournal journal = new ExecutionJournal(file)) {
+            journal.record("rollout", "b", exited(0));
+        }
+
+        try (ExecutionJournal journal = new ExecutionJournal(file)) {
+            Map<String, ExecutionResult> results = new FleetExecutor(executor, 2)
+                    .resume("rollout", journal, command, (computer, result) -> {
+                    }).get();
+
+            assertEquals(Set.of("a", "c"), results.keySet());
+            assertEquals(Set.of("a", "c"), dispatched);
+        }
+
+        try (ExecutionJournal journal = new ExecutionJournal(file)) {
+            assertEquals(3, journal.completed("rollout"));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void resume_CompletesOnceRecordsCommitted_GivenCommitInterval() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("journal.bin");
+        AsyncExecutor executor = (command, computer) -> CompletableFuture.completedFuture(exited(0));
+        Command command = Command.prepare()
+                .cmd("dir")
+                .computer("a").computer("b")
+                .build();
+        Set<String> reported = ConcurrentHashMap.newKeySet();
+
+        try (ExecutionJournal journal = new ExecutionJournal(file, 200)) {
+            new FleetExecutor(executor, 2)
+                    .resume("rollout", journal, command, (computer, result) -> {
+                        assertTrue(journal.isCompleted("rollout", computer));
+                        reported.add(computer);
+                    }).get();
+
+            assertEquals(2, journal.completed("rollout"));
+            assertEquals(Set.of("a", "b"), reported);
+        }
+    }
+
+}
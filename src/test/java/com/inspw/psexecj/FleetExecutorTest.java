@@ -0,0 +1,391 @@
+package com.inspw.psexecj;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class FleetExecutorTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Create a successful result with the given exit code.
+     *
+     * @param exitCode the exit code
+     * @return the result
+     */
+    static ExecutionResult exited(int exitCode) {
+        return new ExecutionResult(exitCode, Termination.EXITED, 1, Duration.ZERO, Duration.ZERO, null, null, null);
+    }
+
+    @Test(timeout = 10000)
+    public void submit_LimitsConcurrentExecutions_GivenParallelism() throws Exception {
+        ConcurrentLinkedQueue<CompletableFuture<ExecutionResult>> pending = new ConcurrentLinkedQueue<>();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AsyncExecutor executor = (command, computer) -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            CompletableFuture<ExecutionResult> future = new CompletableFuture<>();
+            pending.add(future);
+            return future;
+        };
+        Command command = Command.prepare()
+                .cmd("dir")
+                .computer("a").computer("b").computer("c").computer("d").computer("e")
+                .build();
+
+        CompletableFuture<Map<String, ExecutionResult>> results = new FleetExecutor(executor, 2).submit(command);
+
+        while (!results.isDone()) {
+            CompletableFuture<ExecutionResult> next = pending.poll();
+
+            if (next != null) {
+                running.decrementAndGet();
+                next.complete(exited(0));
+            }
+        }
+
+        assertEquals(5, results.get().size());
+        assertEquals(2, maxRunning.get());
+    }
+
+    @Test(timeout = 10000)
+    public void submit_ReportsEachComputer_GivenExitCodesAndFailures() throws Exception {
+        AsyncExecutor executor = (command, computer) -> computer.equals("bad")
+                ? CompletableFuture.failedFuture(new IllegalStateException())
+                : CompletableFuture.completedFuture(exited(computer.length()));
+        Map<String, ExecutionResult> streamed = new ConcurrentHashMap<>();
+        Command command = Command.prepare()
+                .cmd("dir")
+                .computer("a").computer("bb").computer("bad")
+                .build();
+
+        Map<String, ExecutionResult> results = new FleetExecutor(executor, 8)
+                .submit(command, streamed::put)
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals(results, streamed);
+        assertEquals(1, results.get("a").exitCode());
+        assertEquals(2, results.get("bb").exitCode());
+        assertEquals(Termination.SPAWN_FAILED, results.get("bad").termination());
+        assertTrue(results.get("bad").failure() instanceof IllegalStateException);
+    }
+
+    @Test(timeout = 10000)
+    public void submit_ExpandsHostSetLazily_GivenCidrRange() throws Exception {
+        AtomicInteger expanded = new AtomicInteger();
+        AsyncExecutor executor = (command, computer) -> CompletableFuture.completedFuture(exited(0));
+        Command command = Command.prepare()
+                .cmd("dir")
+                .hosts(HostSet.cidr("10.1.0.0/22"))
+                .hosts(HostSet.of(() -> Stream.generate(() -> "gen" + expanded.incrementAndGet())
+                        .limit(3)
+                        .iterator()))
+                .build();
+
+        Map<String, ExecutionResult> results = new FleetExecutor(executor, 16).submit(command).get(5, TimeUnit.SECONDS);
+
+        assertEquals(1022 + 3, results.size());
+        assertTrue(results.containsKey("10.1.3.254"));
+        assertTrue(results.containsKey("gen3"));
+    }
+
+    @Test(timeout = 10000)
+    public void submit_RunsOneExecutionPerChunk_GivenChunkSize() throws Exception {
+        Map<String, List<String>> chunks = new ConcurrentHashMap<>();
+        ConcurrentLinkedQueue<File> files = new ConcurrentLinkedQueue<>();
+        AsyncExecutor executor = (command, computer) -> {
+            assertNull(computer);
+            assertTrue(command.computers().isEmpty());
+            files.add(command.computerListFile());
+
+            try {
+                List<String> chunk = Files.readAllLines(command.computerListFile().toPath());
+                chunks.put(chunk.get(0), chunk);
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+
+            return CompletableFuture.completedFuture(exited(0));
+        };
+        Command command = Command.prepare()
+                .cmd("dir")
+                .hosts(HostSet.numbered("web%d", 1, 250))
+                .build();
+        FleetExecutor fleet = new FleetExecutor(executor, 2);
+        fleet.setChunkSize(100);
+        fleet.setChunkDirectory(temporaryFolder.getRoot());
+
+        Map<String, ExecutionResult> results = fleet.submit(command).get(5, TimeUnit.SECONDS);
+
+        assertEquals(250, results.size());
+        assertEquals(3, chunks.size());
+        assertEquals(100, chunks.get("web101").size());
+        assertEquals(50, chunks.get("web201").size());
+        assertTrue(files.stream().noneMatch(File::exists));
+    }
+
+    @Test(timeout = 10000)
+    public void submit_ReportsComputersFromOutput_GivenChunkSize() throws Exception {
+        AsyncExecutor executor = (command, computer) -> {
+            try (OutputStream out = command.outputSink().open(command, OutputSource.STDERR)) {
+                out.write(("dir exited on WEB1 with error code 3.\r\n"
+                        + "Couldn't access web3:\r\n").getBytes(StandardCharsets.US_ASCII));
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+
+            return CompletableFuture.completedFuture(exited(0));
+        };
+        Command command = Command.prepare()
+                .cmd("dir")
+                .computer("web1").computer("web2").computer("web3")
+                .build();
+        FleetExecutor fleet = new FleetExecutor(executor, 1);
+        fleet.setChunkSize(10);
+        fleet.setChunkDirectory(temporaryFolder.getRoot());
+
+        Map<String, ExecutionResult> results = fleet.submit(command).get(5, TimeUnit.SECONDS);
+
+        assertEquals(3, results.get("web1").exitCode());
+        assertEquals(Termination.UNREPORTED, results.get("web2").termination());
+        assertEquals(Termination.UNREACHABLE, results.get("web3").termination());
+    }
+
+    @Test(timeout = 10000, expected = IllegalStateException.class)
+    public void submit_Throws_GivenChunkSizeAndOutputRedirect() throws Exception {
+        BinaryExecutableExecutor executor = new BinaryExecutableExecutor(StubExecutable.create(temporaryFolder.getRoot()));
+        executor.setOutputRedirect(OutputRedirect.prepare().directory(temporaryFolder.getRoot()).build());
+        FleetExecutor fleet = new FleetExecutor(executor, 1);
+        fleet.setChunkSize(10);
+
+        fleet.submit(Command.prepare().cmd("dir").computer("h1").computer("h2").build());
+    }
+
+    @Test(timeout = 10000)
+    public void submit_ReportsEveryComputer_GivenFailingListener() throws Exception {
+        AsyncExecutor executor = (command, computer) -> CompletableFuture.completedFuture(exited(0));
+        Command command = Command.prepare()
+                .cmd("dir")
+                .computer("web1").computer("web2").computer("web3")
+                .build();
+        FleetExecutor fleet = new FleetExecutor(executor, 1);
+        fleet.setChunkSize(10);
+        fleet.setChunkDirectory(temporaryFolder.getRoot());
+        AtomicInteger reported = new AtomicInteger();
+
+        Map<String, ExecutionResult> results = fleet.submit(command, (computer, result) -> {
+            reported.incrementAndGet();
+            throw new IllegalStateException("listener failed");
+        }).get(5, TimeUnit.SECONDS);
+
+        assertEquals(3, results.size());
+        assertEquals(3, reported.get());
+    }
+
+    @Test(timeout = 10000)
+    public void submit_RunsOneProcessPerComputer_GivenStubExecutable() throws Exception {
+        BinaryExecutableExecutor executor = new BinaryExecutableExecutor(StubExecutable.create(temporaryFolder.getRoot()));
+        Map<String, String> lines = new ConcurrentHashMap<>();
+        Command command = StubExecutable.shell("echo \"$0\"")
+                .computer("10.22.101.101")
+                .computer("10.22.101.102")
+                .outputSink(OutputSink.lines((c, source, line) -> lines.put(c.computers().get(0), line)))
+                .build();
+
+        Map<String, ExecutionResult> results = new FleetExecutor(executor, 2).submit(command).get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, results.size());
+        assertTrue(results.values().stream().allMatch(ExecutionResult::succeeded));
+        assertEquals(2, lines.size());
+    }
+
+    @Test(timeout = 10000)
+    public void publish_DispatchesOnlyRequestedComputers_GivenSlowSubscriber() throws Exception {
+        AtomicInteger dispatched = new AtomicInteger();
+        AsyncExecutor executor = (command, computer) -> {
+            dispatched.incrementAndGet();
+            return CompletableFuture.completedFuture(exited(0));
+        };
+        Command command = Command.prepare()
+                .cmd("dir")
+                .hosts(HostSet.numbered("web%d", 1, 100))
+                .build();
+        LinkedBlockingQueue<String> received = new LinkedBlockingQueue<>();
+        CompletableFuture<Flow.Subscription> subscription = new CompletableFuture<>();
+        CompletableFuture<Void> completed = new CompletableFuture<>();
+
+        new FleetExecutor(executor, 8).publish(command).subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription.complete(s);
+                s.request(3);
+            }
+
+            @Override
+            public void onNext(Map.Entry<String, ExecutionResult> item) {
+                received.add(item.getKey());
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                completed.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                completed.complete(null);
+            }
+        });
+
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(received.poll(5, TimeUnit.SECONDS));
+        }
+
+        Thread.sleep(50);
+        assertEquals(3, dispatched.get());
+        assertFalse(completed.isDone());
+
+        subscription.get().request(Long.MAX_VALUE);
+        completed.get(5, TimeUnit.SECONDS);
+
+        assertEquals(100, dispatched.get());
+        assertEquals(97, received.size());
+    }
+
+    @Test(timeout = 10000)
+    public void publish_CancelsRunningExecutions_GivenCancelledSubscription() throws Exception {
+        CompletableFuture<ExecutionResult> running = new CompletableFuture<>();
+        AsyncExecutor executor = (command, computer) -> running;
+        Command command = Command.prepare().cmd("dir").computer("a").computer("b").build();
+        CompletableFuture<Flow.Subscription> subscription = new CompletableFuture<>();
+
+        new FleetExecutor(executor, 1).publish(command).subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription.complete(s);
+                s.request(2);
+            }
+
+            @Override
+            public void onNext(Map.Entry<String, ExecutionResult> item) {
+                fail("Cancelled subscription received " + item.getKey());
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+
+        subscription.get().cancel();
+
+        assertTrue(running.isCancelled());
+    }
+
+    @Test(timeout = 10000)
+    public void publish_SignalsOnGivenExecutor_GivenCallerExecutor() throws Exception {
+        AsyncExecutor executor = (command, computer) -> CompletableFuture.completedFuture(exited(0));
+        Command command = Command.prepare().cmd("dir").computer("a").computer("b").build();
+        ExecutorService signals = Executors.newSingleThreadExecutor(r -> new Thread(r, "signals"));
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        CompletableFuture<Void> completed = new CompletableFuture<>();
+
+        try {
+            new FleetExecutor(executor, 2).publish(command, signals).subscribe(new Flow.Subscriber<>() {
+                @Override
+                public void onSubscribe(Flow.Subscription s) {
+                    s.request(Long.MAX_VALUE);
+                }
+
+                @Override
+                public void onNext(Map.Entry<String, ExecutionResult> item) {
+                    threads.add(Thread.currentThread().getName());
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    completed.completeExceptionally(throwable);
+                }
+
+                @Override
+                public void onComplete() {
+                    threads.add(Thread.currentThread().getName());
+                    completed.complete(null);
+                }
+            });
+
+            completed.get(5, TimeUnit.SECONDS);
+        } finally {
+            signals.shutdown();
+        }
+
+        assertEquals(Collections.singleton("signals"), threads);
+    }
+
+    @Test(timeout = 10000)
+    public void publish_SignalsErrorOnly_GivenNonPositiveRequest() throws Exception {
+        AtomicInteger dispatched = new AtomicInteger();
+        AsyncExecutor executor = (command, computer) -> {
+            dispatched.incrementAndGet();
+            return CompletableFuture.completedFuture(exited(0));
+        };
+        Command command = Command.prepare().cmd("dir").computer("a").computer("b").build();
+        LinkedBlockingQueue<Object> signals = new LinkedBlockingQueue<>();
+
+        new FleetExecutor(executor, 2).publish(command).subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                s.request(0);
+            }
+
+            @Override
+            public void onNext(Map.Entry<String, ExecutionResult> item) {
+                signals.add(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                signals.add(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                signals.add("complete");
+            }
+        });
+
+        assertTrue(signals.poll(5, TimeUnit.SECONDS) instanceof IllegalArgumentException);
+        Thread.sleep(50);
+        assertTrue(signals.isEmpty());
+        assertEquals(0, dispatched.get());
+    }
+
+}
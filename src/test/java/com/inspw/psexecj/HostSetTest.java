@@ -0,0 +1,176 @@
+package com.inspw.psexecj;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.Closeable;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class HostSetTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static List<String> list(Iterable<String> hosts) {
+        List<String> list = new ArrayList<>();
+        hosts.forEach(list::add);
+        return list;
+    }
+
+    @Test
+    public void cidr_ExcludesNetworkAndBroadcast_GivenSubnet() {
+        HostSet hosts = HostSet.cidr("10.1.2.0/30");
+
+        assertEquals(Arrays.asList("10.1.2.1", "10.1.2.2"), list(hosts));
+        assertEquals(2, hosts.size());
+        assertEquals("10.1.2.0/30", hosts.toString());
+    }
+
+    @Test
+    public void cidr_ReturnsSingleHost_GivenPrefixLength32() {
+        assertEquals(Collections.singletonList("192.168.0.7"), list(HostSet.cidr("192.168.0.7/32")));
+    }
+
+    @Test
+    public void cidr_ReportsSizeWithoutExpanding_GivenLargeSubnet() {
+        assertEquals(65534, HostSet.cidr("10.1.0.0/16").size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cidr_Throws_GivenInvalidSubnet() {
+        HostSet.cidr("10.1.0.0/33");
+    }
+
+    @Test
+    public void range_CrossesOctets_GivenAddresses() {
+        assertEquals(Arrays.asList("10.0.0.254", "10.0.0.255", "10.0.1.0"),
+                list(HostSet.range("10.0.0.254", "10.0.1.0")));
+    }
+
+    @Test
+    public void numbered_FormatsHosts_GivenFormat() {
+        assertEquals(Arrays.asList("web08", "web09", "web10"), list(HostSet.numbered("web%02d", 8, 10)));
+    }
+
+    @Test
+    public void file_SkipsBlankAndCommentLines_GivenHostFile() throws Exception {
+        File file = temporaryFolder.newFile();
+        Files.write(file.toPath(), Arrays.asList("# hosts", "alpha", "", "  beta  "), StandardCharsets.UTF_8);
+
+        HostSet hosts = HostSet.file(file.toPath());
+
+        assertEquals(Arrays.asList("alpha", "beta"), list(hosts));
+        assertEquals(Arrays.asList("alpha", "beta"), list(hosts));
+    }
+
+    @Test
+    public void targets_ExpandsHostSetsAfterComputers_GivenCommand() {
+        Command command = Command.prepare()
+                .cmd("dir")
+                .computer("alpha")
+                .hosts(HostSet.numbered("web%d", 1, 2))
+                .hosts(HostSet.cidr("10.0.0.0/30"))
+                .build();
+
+        assertEquals(Arrays.asList("alpha", "web1", "web2", "10.0.0.1", "10.0.0.2"), list(command.targets()));
+        assertEquals("alpha,web1-web2,10.0.0.0/30", command.targetName());
+    }
+
+    @Test
+    public void file_ClosesFile_GivenIteratorClosedEarly() throws Exception {
+        File file = temporaryFolder.newFile();
+        Files.write(file.toPath(), Arrays.asList("alpha", "beta", "gamma"), StandardCharsets.UTF_8);
+
+        Iterator<String> hosts = HostSet.file(file.toPath()).iterator();
+        assertEquals("alpha", hosts.next());
+        ((Closeable) hosts).close();
+
+        assertFalse(hosts.hasNext());
+    }
+
+    @Test
+    public void targets_ClosesHostSet_GivenIteratorClosedEarly() throws Exception {
+        AtomicBoolean closed = new AtomicBoolean();
+        Command command = Command.prepare()
+                .cmd("dir")
+                .hosts(HostSet.of(() -> new ClosingIterator(closed)))
+                .build();
+
+        Iterator<String> targets = command.targets().iterator();
+        assertEquals("host", targets.next());
+        ((Closeable) targets).close();
+
+        assertTrue(closed.get());
+        assertFalse(targets.hasNext());
+    }
+
+    @Test
+    public void craft_Throws_GivenHostSetTooLargeForOneInvocation() {
+        AtomicBoolean closed = new AtomicBoolean();
+        Command command = Command.prepare()
+                .cmd("dir")
+                .hosts(HostSet.of(() -> new ClosingIterator(closed)))
+                .build();
+        CommandTemplate template = new CommandTemplate(command, new File("PsExec.exe"), true, true);
+
+        try {
+            template.craft();
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(closed.get());
+        }
+    }
+
+    @Test
+    public void craft_ExpandsHostSets_GivenSmallHostSet() {
+        Command command = Command.prepare()
+                .cmd("dir")
+                .computer("alpha")
+                .hosts(HostSet.cidr("10.0.0.0/30"))
+                .build();
+
+        String[] cmdarray = new CommandTemplate(command, new File("PsExec.exe"), true, true).craft();
+
+        assertTrue(Arrays.asList(cmdarray).contains("\\\\alpha,10.0.0.1,10.0.0.2"));
+    }
+
+    /**
+     * An endless iterator over the same host, recording whether it was closed.
+     */
+    private static class ClosingIterator implements Iterator<String>, Closeable {
+
+        private final AtomicBoolean closed;
+
+        private ClosingIterator(AtomicBoolean closed) {
+            this.closed = closed;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !closed.get();
+        }
+
+        @Override
+        public String next() {
+            return "host";
+        }
+
+        @Override
+        public void close() {
+            closed.set(true);
+        }
+
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.inspw.psexecj;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class LocalExecutorTest {
+
+    private LocalExecutor executor;
+
+    @Before
+    public void setUp() {
+        assumeTrue(System.getProperty("os.name").startsWith("Linux"));
+        executor = new LocalExecutor(5000);
+        executor.setOutputCapture(OutputCapture.prepare().build());
+    }
+
+    private String run(Command command) throws Exception {
+        ExecutionResult result = executor.submit(command).get();
+        assertEquals(0, result.exitCode());
+        return result.stdout().toString(StandardCharsets.US_ASCII).trim();
+    }
+
+    @Test(timeout = 10000)
+    public void submit_RunsInWorkingDirectory_GivenWorkingDirectory() throws Exception {
+        assertEquals("/tmp", run(Command.prepare().cmd("pwd").workingDirectory("/tmp").build()));
+    }
+
+    @Test(timeout = 10000)
+    public void submit_RunsNiced_GivenLowPriority() throws Exception {
+        assertEquals("10", run(Command.prepare().cmd("nice").priority(Command.PRIORITY_LOW).build()));
+    }
+
+    @Test(timeout = 10000)
+    public void submit_PinsToProcessors_GivenProcessors() throws Exception {
+        Command command = StubExecutable.shell("grep Cpus_allowed_list /proc/self/status")
+                .processors(new int[]{1})
+                .build();
+
+        assertTrue(run(command).endsWith("\t0"));
+    }
+
+    @Test(timeout = 10000)
+    public void submit_Fails_GivenRemoteComputer() {
+        Command command = Command.prepare().cmd("hostname").computer("192.168.0.50").build();
+
+        assertFalse(executor.getTransport().accepts(command, null));
+        assertTrue(executor.submit(command).isCompletedExceptionally());
+    }
+
+    @Test(timeout = 10000)
+    public void accepts_ReturnsFalse_GivenOtherUser() {
+        Command command = Command.prepare().cmd("hostname").computer("localhost").username("Administrator").build();
+
+        assertFalse(executor.getTransport().accepts(command, null));
+    }
+
+    @Test(timeout = 10000)
+    public void accepts_ReturnsTrue_GivenLocalComputerName() {
+        Command command = Command.prepare().cmd("hostname").computer("LOCALHOST").build();
+
+        assertTrue(executor.getTransport().accepts(command, null));
+        assertTrue(executor.getTransport().accepts(command, "127.0.0.1"));
+        assertFalse(executor.getTransport().accepts(command, "server01"));
+    }
+
+    @Test(timeout = 10000)
+    public void submit_RunsLocally_GivenStandInAndRemoteComputer() throws Exception {
+        executor.setTransport(new LocalTransport(true));
+        Command command = Command.prepare().cmd("hostname").computer("server01").computer("server02").build();
+
+        assertTrue(executor.getTransport().accepts(command, "server03"));
+        assertEquals(run(Command.prepare().cmd("hostname").build()), run(command));
+    }
+
+}
@@ -0,0 +1,108 @@
+package com.inspw.psexecj;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsListenerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Assert that the given latency is within the histogram precision of the expected latency.
+     *
+     * @param expected the expected latency
+     * @param actual   the actual latency
+     */
+    private static void assertWithinPrecision(Duration expected, Duration actual) {
+        double error = Math.abs(actual.toNanos() - expected.toNanos()) / (double) expected.toNanos();
+        assertTrue("Expected about " + expected + " but was " + actual, error < 0.04);
+    }
+
+    @Test
+    public void histogram_ReportsPercentiles_GivenUniformLatencies() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(Duration.ofMillis(i));
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(1000, snapshot.count());
+        assertWithinPrecision(Duration.ofMillis(500), snapshot.percentile(50));
+        assertWithinPrecision(Duration.ofMillis(990), snapshot.percentile(99));
+        assertWithinPrecision(Duration.ofMillis(1000), snapshot.max());
+        assertWithinPrecision(Duration.ofNanos(500_500_000), snapshot.mean());
+    }
+
+    @Test
+    public void histogram_ReportsZero_GivenNoLatencies() {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+
+        assertEquals(0, snapshot.count());
+        assertEquals(Duration.ZERO, snapshot.percentile(99));
+        assertEquals(Duration.ZERO, snapshot.max());
+    }
+
+    @Test(timeout = 10000)
+    public void snapshot_CountsExecutions_GivenListenerOnExecutor() throws Exception {
+        MetricsListener metrics = new MetricsListener();
+        BinaryExecutableExecutor executor = new BinaryExecutableExecutor(StubExecutable.create(temporaryFolder.getRoot()));
+        executor.setListener(metrics);
+
+        executor.submit(StubExecutable.shell("exit 0").computer("host-a").build()).get(5, TimeUnit.SECONDS);
+        executor.submit(StubExecutable.shell("echo hi; exit 1").computer("host-b")
+                .outputSink(OutputSink.lines((c, source, line) -> {
+                }))
+                .build()).get(5, TimeUnit.SECONDS);
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+
+        assertEquals(2, snapshot.queued());
+        assertEquals(2, snapshot.spawned());
+        assertEquals(2, snapshot.completed());
+        assertEquals(1, snapshot.failed());
+        assertEquals(1, snapshot.firstOutputTimes().count());
+        assertEquals(1, snapshot.hostWallTimes().get("host-a").count());
+        assertEquals(1, snapshot.hostWallTimes().get("host-b").count());
+        assertEquals(2, snapshot.cmdWallTimes().get("/bin/sh").count());
+    }
+
+    @Test
+    public void snapshot_KeepsRecentHosts_GivenMoreHostsThanCapacity() {
+        MetricsListener metrics = new MetricsListener(8);
+
+        for (int i = 0; i < 100; i++) {
+            Command command = Command.prepare().cmd("dir").computer("host-" + i).build();
+            metrics.onCompleted(command, FleetExecutorTest.exited(0));
+        }
+
+        Map<String, LatencyHistogram.Snapshot> hosts = metrics.snapshot().hostWallTimes();
+
+        assertTrue(hosts.size() <= 8);
+        assertTrue(hosts.containsKey("host-99"));
+        assertFalse(hosts.containsKey("host-0"));
+    }
+
+    @Test
+    public void snapshot_SkipsHosts_GivenCommandTargetingSeveralComputers() {
+        MetricsListener metrics = new MetricsListener();
+        Command command = Command.prepare().cmd("dir").computer("host-a").computer("host-b").build();
+
+        metrics.onCompleted(command, FleetExecutorTest.exited(0));
+
+        assertTrue(metrics.snapshot().hostWallTimes().isEmpty());
+        assertEquals(1, metrics.snapshot().cmdWallTimes().get("dir").count());
+    }
+
+}
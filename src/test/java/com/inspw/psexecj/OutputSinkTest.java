@@ -0,0 +1,99 @@
+package com.inspw.psexecj;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OutputSinkTest {
+
+    /**
+     * Write the given text into a line sink and collect the delivered lines.
+     *
+     * @param text          the text to write
+     * @param maxLineLength the line length limit
+     * @return the delivered lines
+     */
+    private static List<String> collectLines(String text, int maxLineLength) throws IOException {
+        List<String> lines = new ArrayList<>();
+        Command command = Command.prepare().cmd("dir").build();
+        OutputSink sink = OutputSink.lines((c, source, line) -> lines.add(line),
+                StandardCharsets.UTF_8, maxLineLength);
+
+        try (OutputStream out = sink.open(command, OutputSource.STDOUT)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+
+        return lines;
+    }
+
+    @Test
+    public void lines_SplitsLines_GivenMixedLineTerminators() throws IOException {
+        assertEquals(Arrays.asList("first", "second", "", "third"),
+                collectLines("first\r\nsecond\n\nthird", 64));
+    }
+
+    @Test
+    public void lines_SplitsLongLines_GivenMaxLineLengthExceeded() throws IOException {
+        assertEquals(Arrays.asList("abcd", "efgh", "ij"),
+                collectLines("abcdefghij\n", 4));
+    }
+
+    @Test
+    public void chunks_DeliversAllBytes_GivenMultipleWrites() throws IOException {
+        Command command = Command.prepare().cmd("dir").build();
+        StringBuilder received = new StringBuilder();
+        OutputSink sink = OutputSink.chunks((c, source, buffer, offset, length) ->
+                received.append(new String(buffer, offset, length, StandardCharsets.US_ASCII)));
+
+        try (OutputStream out = sink.open(command, OutputSource.STDERR)) {
+            out.write("abc".getBytes(StandardCharsets.US_ASCII));
+            out.write('d');
+        }
+
+        assertEquals("abcd", received.toString());
+    }
+
+    @Test
+    public void hostExits_ReportsEachComputer_GivenMultiComputerOutput() throws IOException {
+        Command command = Command.prepare().cmd("ipconfig").build();
+        List<String> exits = new ArrayList<>();
+        OutputSink sink = OutputSink.hostExits((c, computer, termination, exitCode) ->
+                exits.add(computer + "=" + (termination == Termination.UNREACHABLE ? "unreachable" : exitCode)));
+        String output = "\r\nWindows IP Configuration\r\n"
+                + "ipconfig exited on WEB01 with error code 0.\r\n"
+                + "Couldn't access web02:\r\nThe network path was not found.\r\n"
+                + "ipconfig exited on 10.0.0.3 with error code -2.";
+
+        try (OutputStream out = sink.open(command, OutputSource.STDERR)) {
+            byte[] bytes = output.getBytes(StandardCharsets.US_ASCII);
+
+            // Split the writes in the middle of lines, as a pipe would.
+            out.write(bytes, 0, 40);
+            out.write(bytes, 40, bytes.length - 40);
+        }
+
+        assertEquals(Arrays.asList("WEB01=0", "web02=unreachable", "10.0.0.3=-2"), exits);
+    }
+
+    @Test
+    public void hostExits_IgnoresProgramOutput_GivenStatusLineOnStdout() throws IOException {
+        Command command = Command.prepare().cmd("ipconfig").build();
+        List<String> exits = new ArrayList<>();
+        OutputSink sink = OutputSink.hostExits((c, computer, termination, exitCode) -> exits.add(computer));
+
+        try (OutputStream out = sink.open(command, OutputSource.STDOUT)) {
+            out.write("ipconfig exited on WEB01 with error code 0.\r\n".getBytes(StandardCharsets.US_ASCII));
+        }
+
+        assertTrue(exits.isEmpty());
+    }
+
+}
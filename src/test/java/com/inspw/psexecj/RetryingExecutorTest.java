@@ -0,0 +1,174 @@
+package com.inspw.psexecj;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.inspw.psexecj.FleetExecutorTest.exited;
+import static org.junit.Assert.*;
+
+public class RetryingExecutorTest {
+
+    private static final Command COMMAND = Command.prepare().cmd("dir").build();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static ExecutionResult timedOut() {
+        return new ExecutionResult(-1, Termination.TIMED_OUT, 1, Duration.ZERO, Duration.ZERO, null, null, null);
+    }
+
+    @Test(timeout = 10000)
+    public void submit_RetriesUntilSuccess_GivenTransientFailures() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        AsyncExecutor executor = (command, computer) -> CompletableFuture.completedFuture(
+                attempts.incrementAndGet() < 3 ? exited(-1) : exited(0));
+        RetryPolicy policy = RetryPolicy.prepare().maxAttempts(5).initialBackoff(10).build();
+
+        ExecutionResult result = new RetryingExecutor(executor, policy).submit(COMMAND).get();
+
+        assertTrue(result.succeeded());
+        assertEquals(3, attempts.get());
+    }
+
+    @Test(timeout = 10000)
+    public void submit_ReturnsLastResult_GivenMaxAttemptsReached() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        AsyncExecutor executor = (command, computer) -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.completedFuture(timedOut());
+        };
+        RetryPolicy policy = RetryPolicy.prepare().maxAttempts(3).initialBackoff(10).build();
+
+        ExecutionResult result = new RetryingExecutor(executor, policy).submit(COMMAND).get();
+
+        assertEquals(Termination.TIMED_OUT, result.termination());
+        assertEquals(3, attempts.get());
+    }
+
+    @Test(timeout = 10000)
+    public void submit_ReleasesSupersededResults_GivenRetries() throws Exception {
+        List<Path> spills = new CopyOnWriteArrayList<>();
+        AsyncExecutor executor = (command, computer) -> {
+            try {
+                Path spill = temporaryFolder.newFile().toPath();
+                spills.add(spill);
+                return CompletableFuture.completedFuture(new ExecutionResult(-1, Termination.TIMED_OUT, 1,
+                        Duration.ZERO, Duration.ZERO, new CapturedOutput(0, spill), null, null));
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        };
+        RetryPolicy policy = RetryPolicy.prepare().maxAttempts(3).initialBackoff(10).build();
+
+        ExecutionResult result = new RetryingExecutor(executor, policy).submit(COMMAND).get();
+
+        assertEquals(3, spills.size());
+        assertFalse(Files.exists(spills.get(0)));
+        assertFalse(Files.exists(spills.get(1)));
+        assertTrue(Files.exists(spills.get(2)));
+        result.release();
+        assertFalse(Files.exists(spills.get(2)));
+    }
+
+    @Test(timeout = 10000)
+    public void submit_DoesNotRetry_GivenPermanentFailure() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        AsyncExecutor executor = (command, computer) -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.completedFuture(exited(5));
+        };
+
+        ExecutionResult result = new RetryingExecutor(executor, RetryPolicy.prepare().build()).submit(COMMAND).get();
+
+        assertEquals(5, result.exitCode());
+        assertEquals(1, attempts.get());
+    }
+
+    @Test(timeout = 10000)
+    public void submit_StopsRetrying_GivenDeadlineSpent() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        AsyncExecutor executor = (command, computer) -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.completedFuture(timedOut());
+        };
+        RetryPolicy policy = RetryPolicy.prepare()
+                .maxAttempts(100)
+                .initialBackoff(100)
+                .multiplier(1)
+                .jitter(0)
+                .deadline(350)
+                .build();
+
+        new RetryingExecutor(executor, policy).submit(COMMAND).get();
+
+        assertEquals(4, attempts.get());
+    }
+
+    @Test(timeout = 10000)
+    public void submit_CancelsRunningAttempt_GivenDeadlineSpent() throws Exception {
+        CompletableFuture<ExecutionResult> attempt = new CompletableFuture<>();
+        RetryPolicy policy = RetryPolicy.prepare().deadline(200).build();
+
+        ExecutionResult result = new RetryingExecutor((command, computer) -> attempt, policy).submit(COMMAND).get();
+
+        assertEquals(Termination.TIMED_OUT, result.termination());
+
+        try {
+            attempt.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (CancellationException e) {
+            // The running attempt was cancelled once the budget was spent.
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void submit_DoesNotRetry_GivenSpawnFailed() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        AsyncExecutor executor = (command, computer) -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.completedFuture(ExecutionResult.failed(new IOException("missing.exe")));
+        };
+
+        ExecutionResult result = new RetryingExecutor(executor, RetryPolicy.prepare().build()).submit(COMMAND).get();
+
+        assertEquals(Termination.SPAWN_FAILED, result.termination());
+        assertEquals(1, attempts.get());
+    }
+
+    @Test(timeout = 10000)
+    public void submit_CancelsPendingRetry_GivenCancelled() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        AsyncExecutor executor = (command, computer) -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.completedFuture(timedOut());
+        };
+        RetryPolicy policy = RetryPolicy.prepare().initialBackoff(200).jitter(0).build();
+
+        new RetryingExecutor(executor, policy).submit(COMMAND).cancel(true);
+        Thread.sleep(400);
+
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void backoff_GrowsExponentiallyUpToMax_GivenNoJitter() {
+        RetryPolicy policy = RetryPolicy.prepare().initialBackoff(100).maxBackoff(350).jitter(0).build();
+
+        assertEquals(100, policy.backoff(1));
+        assertEquals(200, policy.backoff(2));
+        assertEquals(350, policy.backoff(3));
+    }
+
+}
@@ -0,0 +1,32 @@
+package com.inspw.psexecj;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.inspw.psexecj.FleetExecutorTest.exited;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeFalse;
+
+public class RoutingExecutorTest {
+
+    @Test(timeout = 10000)
+    public void submit_RunsLocally_GivenLocalCommand() throws Exception {
+        assumeFalse(System.getProperty("os.name").startsWith("Windows"));
+
+        AtomicInteger remoteExecutions = new AtomicInteger();
+        AsyncExecutor remote = (command, computer) -> {
+            remoteExecutions.incrementAndGet();
+            return CompletableFuture.completedFuture(exited(0));
+        };
+        RoutingExecutor routing = new RoutingExecutor(new LocalExecutor(), remote);
+
+        ExecutionResult local = routing.submit(StubExecutable.shell("exit 3").build()).get();
+        routing.submit(StubExecutable.shell("exit 3").build(), "server01").get();
+
+        assertEquals(3, local.exitCode());
+        assertEquals(1, remoteExecutions.get());
+    }
+
+}
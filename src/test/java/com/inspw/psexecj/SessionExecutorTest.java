@@ -0,0 +1,161 @@
+package com.inspw.psexecj;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class SessionExecutorTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private SessionExecutor sessions;
+
+    @After
+    public void tearDown() {
+        if (sessions != null) {
+            sessions.close();
+        }
+    }
+
+    private SessionExecutor sessions(int executeTimeout) throws Exception {
+        sessions = new SessionExecutor(
+                new BinaryExecutableExecutor(StubExecutable.create(temporaryFolder.getRoot()), executeTimeout),
+                ShellDialect.SH);
+        return sessions;
+    }
+
+    @Test(timeout = 10000)
+    public void submit_RunsCommandsInOneSession_GivenSameComputer() throws Exception {
+        SessionExecutor executor = sessions(0);
+        List<String> lines = new CopyOnWriteArrayList<>();
+        List<CompletableFuture<ExecutionResult>> results = new ArrayList<>();
+
+        for (int i = 0; i < 20; i++) {
+            results.add(executor.submit(StubExecutable.shell("echo $PPID; exit " + i)
+                    .outputSink(OutputSink.lines((c, source, line) -> lines.add(line)))
+                    .build(), "host"));
+        }
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, results.get(i).get(5, TimeUnit.SECONDS).exitCode());
+        }
+
+        assertEquals(1, executor.getSessionCount());
+        assertEquals(20, lines.size());
+        assertEquals(1, lines.stream().distinct().count());
+    }
+
+    @Test(timeout = 10000)
+    public void submit_FramesOutput_GivenOutputWithoutTrailingNewline() throws Exception {
+        SessionExecutor executor = sessions(0);
+        List<String> first = new CopyOnWriteArrayList<>();
+        List<String> second = new CopyOnWriteArrayList<>();
+
+        CompletableFuture<ExecutionResult> a = executor.submit(StubExecutable.shell("echo err >&2; printf 'no newline'")
+                .outputSink(OutputSink.lines((c, source, line) -> first.add(line)))
+                .build(), "host");
+        CompletableFuture<ExecutionResult> b = executor.submit(StubExecutable.shell("echo 'it''s'")
+                .outputSink(OutputSink.lines((c, source, line) -> second.add(line)))
+                .build(), "host");
+
+        a.get(5, TimeUnit.SECONDS);
+        b.get(5, TimeUnit.SECONDS);
+
+        assertEquals(Arrays.asList("err", "no newline"), first);
+        assertEquals(Arrays.asList("its"), second);
+    }
+
+    @Test(timeout = 10000)
+    public void submit_PassesLongLineThrough_GivenOutputWithoutNewline() throws Exception {
+        SessionExecutor executor = sessions(0);
+        int size = SessionExecutor.MAX_LINE_LENGTH * 4;
+        AtomicLong delivered = new AtomicLong();
+        AtomicLong largestChunk = new AtomicLong();
+
+        Command command = StubExecutable.shell("head -c " + size + " /dev/zero | tr '\\0' a; exit 5")
+                .outputSink(OutputSink.chunks((c, source, buffer, offset, length) -> {
+                    delivered.addAndGet(length);
+                    largestChunk.accumulateAndGet(length, Math::max);
+                }))
+                .build();
+        ExecutionResult result = executor.submit(command, "host").get(5, TimeUnit.SECONDS);
+
+        assertEquals(5, result.exitCode());
+        assertEquals(size, delivered.get());
+        assertTrue(largestChunk.get() <= SessionExecutor.MAX_LINE_LENGTH);
+    }
+
+    @Test(timeout = 10000)
+    public void submit_StartsOneSessionPerComputer_GivenDifferentComputers() throws Exception {
+        SessionExecutor executor = sessions(0);
+
+        executor.submit(StubExecutable.shell("true").build(), "a").get(5, TimeUnit.SECONDS);
+        executor.submit(StubExecutable.shell("true").build(), "b").get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, executor.getSessionCount());
+    }
+
+    @Test(timeout = 10000)
+    public void submit_ClosesSession_GivenIdleTimeout() throws Exception {
+        SessionExecutor executor = sessions(0);
+        executor.setIdleTimeout(100);
+
+        executor.submit(StubExecutable.shell("true").build(), "host").get(5, TimeUnit.SECONDS);
+
+        while (executor.getSessionCount() > 0) {
+            Thread.sleep(20);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void submit_CompletesAsTimedOut_GivenExecuteTimeoutReached() throws Exception {
+        SessionExecutor executor = sessions(300);
+
+        CompletableFuture<ExecutionResult> hung = executor.submit(StubExecutable.shell("sleep 30").build(), "host");
+        CompletableFuture<ExecutionResult> queued = executor.submit(StubExecutable.shell("true").build(), "host");
+
+        assertEquals(Termination.TIMED_OUT, hung.get(5, TimeUnit.SECONDS).termination());
+        assertEquals(Termination.SPAWN_FAILED, queued.get(5, TimeUnit.SECONDS).termination());
+        assertEquals(0, executor.submit(StubExecutable.shell("true").build(), "host").get(5, TimeUnit.SECONDS).exitCode());
+    }
+
+    @Test(timeout = 10000)
+    public void submit_FailsOnlyThatCommand_GivenFailingOutputSink() throws Exception {
+        SessionExecutor executor = sessions(0);
+
+        CompletableFuture<ExecutionResult> failing = executor.submit(StubExecutable.shell("echo a; echo b; exit 1")
+                .outputSink(OutputSink.lines((c, source, line) -> {
+                    throw new IllegalStateException("sink failed");
+                }))
+                .build(), "host");
+        CompletableFuture<ExecutionResult> next = executor.submit(StubExecutable.shell("exit 4").build(), "host");
+
+        assertTrue(failing.get(5, TimeUnit.SECONDS).failure() instanceof IllegalStateException);
+        assertEquals(4, next.get(5, TimeUnit.SECONDS).exitCode());
+        assertEquals(1, executor.getSessionCount());
+    }
+
+    @Test(timeout = 10000)
+    public void submit_PassesToExecutor_GivenDetachedOrCopiedCommand() throws Exception {
+        SessionExecutor executor = sessions(0);
+
+        assertEquals(3, executor.submit(StubExecutable.shell("exit 3").detach(true).build(), "host")
+                .get(5, TimeUnit.SECONDS).exitCode());
+        assertEquals(3, executor.submit(StubExecutable.shell("exit 3").copy(true).build(), "host")
+                .get(5, TimeUnit.SECONDS).exitCode());
+        assertEquals(0, executor.getSessionCount());
+    }
+
+}
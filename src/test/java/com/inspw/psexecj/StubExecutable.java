@@ -0,0 +1,61 @@
+package com.inspw.psexecj;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assume.assumeFalse;
+
+/**
+ * Shell script stand-in for PsExec, usable as {@link BinaryExecutableExecutor#getExeFile()} on Linux.
+ * The script skips the PsExec flags and runs the remaining command line locally.
+ */
+final class StubExecutable {
+
+    private static final String SCRIPT = "#!/bin/sh\n"
+            + "while [ $# -gt 0 ]; do\n"
+            + "  case \"$1\" in\n"
+            + "    -u|-p|-n|-r|-w|-a) shift 2 ;;\n"
+            + "    -*|\\\\\\\\*|@*) shift ;;\n"
+            + "    *) break ;;\n"
+            + "  esac\n"
+            + "done\n"
+            + "exec \"$@\"\n";
+
+    private StubExecutable() {
+    }
+
+    /**
+     * Write the stub script into the given directory. Skips the calling test on Windows.
+     *
+     * @param directory the directory to write into
+     * @return the executable stub file
+     * @throws IOException if an I/O error occurs
+     */
+    static File create(File directory) throws IOException {
+        assumeFalse(System.getProperty("os.name").startsWith("Windows"));
+
+        File stub = new File(directory, "psexec-stub.sh");
+        Files.write(stub.toPath(), SCRIPT.getBytes(StandardCharsets.US_ASCII));
+
+        if (!stub.setExecutable(true)) {
+            throw new IOException("Unable to make stub executable");
+        }
+
+        return stub;
+    }
+
+    /**
+     * Create a command running the given shell script through the stub.
+     *
+     * @param script the shell script to run
+     * @return the command builder
+     */
+    static Command.CommandBuilder shell(String script) {
+        return Command.prepare()
+                .cmd("/bin/sh")
+                .arguments(new String[]{"-c", script});
+    }
+
+}
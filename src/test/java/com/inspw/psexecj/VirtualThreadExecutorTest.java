@@ -0,0 +1,112 @@
+package com.inspw.psexecj;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class VirtualThreadExecutorTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test(timeout = 10000)
+    public void executeAll_ReturnsResultsInOrder_GivenCommands() throws Exception {
+        VirtualThreadExecutor executor = new VirtualThreadExecutor(
+                new BinaryExecutableExecutor(StubExecutable.create(temporaryFolder.getRoot())));
+
+        List<ExecutionResult> results = executor.executeAll(Arrays.asList(
+                StubExecutable.shell("sleep 0.2; exit 1").build(),
+                StubExecutable.shell("exit 2").build(),
+                StubExecutable.shell("exit 3").build()
+        ));
+
+        assertEquals(1, results.get(0).exitCode());
+        assertEquals(2, results.get(1).exitCode());
+        assertEquals(3, results.get(2).exitCode());
+    }
+
+    @Test(timeout = 10000, expected = IOException.class)
+    public void executeAll_ThrowsException_GivenFailingExecution() throws Exception {
+        VirtualThreadExecutor executor = new VirtualThreadExecutor(command -> {
+            throw new IOException();
+        });
+
+        executor.executeAll(Arrays.asList(Command.prepare().cmd("dir").build()));
+    }
+
+    @Test(timeout = 10000)
+    public void executeAll_InterruptsOthers_GivenLaterExecutionFailing() throws Exception {
+        AtomicBoolean interrupted = new AtomicBoolean();
+        VirtualThreadExecutor executor = new VirtualThreadExecutor(command -> {
+            if (command.cmd().equals("fail")) {
+                throw new IOException();
+            }
+
+            try {
+                Thread.sleep(30_000);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+
+            return FleetExecutorTest.exited(0);
+        });
+
+        try {
+            executor.executeAll(Arrays.asList(
+                    Command.prepare().cmd("sleep").build(),
+                    Command.prepare().cmd("fail").build()
+            ));
+            fail();
+        } catch (IOException e) {
+            assertTrue(interrupted.get());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void submit_CompletesWithResult_GivenComputer() throws Exception {
+        VirtualThreadExecutor executor = new VirtualThreadExecutor(command ->
+                FleetExecutorTest.exited(command.computers().size()));
+
+        ExecutionResult result = executor.submit(Command.prepare().cmd("dir").build(), "10.22.101.101")
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, result.exitCode());
+    }
+
+    @Test(timeout = 10000)
+    public void submit_KillsProcess_GivenCancelledFuture() throws Exception {
+        VirtualThreadExecutor executor = new VirtualThreadExecutor(
+                new BinaryExecutableExecutor(StubExecutable.create(temporaryFolder.getRoot())));
+        File pidFile = new File(temporaryFolder.getRoot(), "sleep.pid");
+
+        CompletableFuture<ExecutionResult> result = executor.submit(
+                StubExecutable.shell("echo $$ > '" + pidFile + ".tmp'; mv '" + pidFile + ".tmp' '" + pidFile
+                        + "'; exec sleep 30").build());
+
+        while (!pidFile.exists()) {
+            Thread.sleep(10);
+        }
+
+        long pid = Long.parseLong(new String(Files.readAllBytes(pidFile.toPath()), StandardCharsets.US_ASCII).trim());
+        assertTrue(result.cancel(true));
+
+        while (ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false)) {
+            Thread.sleep(10);
+        }
+    }
+
+}